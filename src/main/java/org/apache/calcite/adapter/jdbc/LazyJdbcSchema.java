@@ -18,6 +18,7 @@
 package org.apache.calcite.adapter.jdbc;
 
 import org.apache.calcite.avatica.SqlType;
+import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
@@ -25,11 +26,13 @@ import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlIdentifier;
 import org.apache.calcite.sql.type.SqlTypeFactoryImpl;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.Util;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.drill.exec.store.idvp.jdbc.JdbcRecordReader;
+import org.apache.drill.exec.store.idvp.jdbc.JdbcStorageConfig;
 
 import javax.sql.DataSource;
 import java.sql.DatabaseMetaData;
@@ -43,11 +46,23 @@ public class LazyJdbcSchema extends JdbcSchema {
     private final Map<String, Table> tables = new ConcurrentHashMap<>();
     private final String catalog;
     private final String schema;
+    private final JdbcStorageConfig config;
 
-    public LazyJdbcSchema(DataSource dataSource, SqlDialect dialect, JdbcConvention convention, String catalog, String schema) {
+    public LazyJdbcSchema(DataSource dataSource, SqlDialect dialect, JdbcConvention convention, String catalog, String schema,
+                          JdbcStorageConfig config) {
         super(dataSource, dialect, convention, catalog, schema);
         this.catalog = catalog;
         this.schema = schema;
+        this.config = config;
+    }
+
+    /**
+     * Returns remote name of the jdbc table (catalog, schema and table as known by the source database)
+     * or null if table is not a jdbc table.
+     */
+    public static SqlIdentifier getRemoteTableName(RelOptTable table) {
+        JdbcTable jdbcTable = table.unwrap(JdbcTable.class);
+        return jdbcTable == null ? null : jdbcTable.tableName();
     }
 
     @Override
@@ -122,7 +137,7 @@ public class LazyJdbcSchema extends JdbcSchema {
     private RelDataType sqlType(RelDataTypeFactory typeFactory, int dataType,
                                 int precision, int scale, String typeString) {
         // Fall back to ANY if type is unknown
-        final SqlTypeName sqlTypeName = Util.first(JdbcRecordReader.getNameForJdbcType(dataType), SqlTypeName.ANY);
+        final SqlTypeName sqlTypeName = Util.first(JdbcRecordReader.getNameForJdbcType(dataType, typeString, config), SqlTypeName.ANY);
         if (sqlTypeName == SqlTypeName.ARRAY) {
             RelDataType component = null;
             if (typeString != null && typeString.endsWith(" ARRAY")) {
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.sql;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlDialect.DatabaseProduct;
+import org.apache.calcite.sql.pretty.SqlPrettyWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of Drill functions the database computes under another name or syntax. Calls of Drill functions
+ * are pushed down only when a translation is registered for the database, see {@link JdbcSqlDialect}.
+ * Translations may be added with {@link #register(DatabaseProduct, String, Translation)}.
+ */
+public final class JdbcFunctionTranslations {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\d+)}");
+
+    private static final Map<DatabaseProduct, Map<String, Translation>> TRANSLATIONS = new ConcurrentHashMap<>();
+
+    // Единицы DATE_TRUNC в формате TRUNC Oracle
+    private static final Map<String, String> ORACLE_TRUNC_UNITS = ImmutableMap.<String, String>builder()
+            .put("YEAR", "YYYY")
+            .put("QUARTER", "Q")
+            .put("MONTH", "MM")
+            .put("WEEK", "IW")
+            .put("DAY", "DD")
+            .put("HOUR", "HH24")
+            .put("MINUTE", "MI")
+            .build();
+
+    static {
+        register(DatabaseProduct.POSTGRESQL, "ilike", template("({0} ILIKE {1})"));
+        register(DatabaseProduct.POSTGRESQL, "date_trunc", template("DATE_TRUNC({0}, {1})"));
+        register(DatabaseProduct.POSTGRESQL, "strpos", template("STRPOS({0}, {1})"));
+        register(DatabaseProduct.POSTGRESQL, "length", template("LENGTH({0})"));
+        register(DatabaseProduct.POSTGRESQL, "lpad", rename("LPAD"));
+        register(DatabaseProduct.POSTGRESQL, "rpad", rename("RPAD"));
+        register(DatabaseProduct.POSTGRESQL, "left", template("LEFT({0}, {1})"));
+        register(DatabaseProduct.POSTGRESQL, "right", template("RIGHT({0}, {1})"));
+        register(DatabaseProduct.POSTGRESQL, "cbrt", template("CBRT({0})"));
+
+        register(DatabaseProduct.MYSQL, "ilike", template("(LOWER({0}) LIKE LOWER({1}))"));
+        register(DatabaseProduct.MYSQL, "strpos", template("LOCATE({1}, {0})"));
+        register(DatabaseProduct.MYSQL, "length", template("CHAR_LENGTH({0})"));
+        register(DatabaseProduct.MYSQL, "lpad", template("LPAD({0}, {1}, {2})"));
+        register(DatabaseProduct.MYSQL, "rpad", template("RPAD({0}, {1}, {2})"));
+        register(DatabaseProduct.MYSQL, "left", new NonNegativeLength(template("LEFT({0}, {1})")));
+        register(DatabaseProduct.MYSQL, "right", new NonNegativeLength(template("RIGHT({0}, {1})")));
+
+        register(DatabaseProduct.ORACLE, "ilike", template("(LOWER({0}) LIKE LOWER({1}))"));
+        register(DatabaseProduct.ORACLE, "date_trunc", new OracleDateTrunc());
+        register(DatabaseProduct.ORACLE, "strpos", template("INSTR({0}, {1})"));
+        register(DatabaseProduct.ORACLE, "length", template("LENGTH({0})"));
+        register(DatabaseProduct.ORACLE, "lpad", rename("LPAD"));
+        register(DatabaseProduct.ORACLE, "rpad", rename("RPAD"));
+        register(DatabaseProduct.ORACLE, "left", new NonNegativeLength(template("SUBSTR({0}, 1, {1})")));
+
+        register(DatabaseProduct.MSSQL, "ilike", template("(LOWER({0}) LIKE LOWER({1}))"));
+        register(DatabaseProduct.MSSQL, "strpos", template("CHARINDEX({1}, {0})"));
+        register(DatabaseProduct.MSSQL, "left", new NonNegativeLength(template("LEFT({0}, {1})")));
+        register(DatabaseProduct.MSSQL, "right", new NonNegativeLength(template("RIGHT({0}, {1})")));
+
+        // Регулярные выражения переводим только для H2: java.util.regex, как в Drill.
+        // Синтаксис POSIX (PostgreSQL) и Oracle отличается от Java, результат может отличаться
+        register(DatabaseProduct.H2, "ilike", template("({0} ILIKE {1})"));
+        register(DatabaseProduct.H2, "regexp_matches", template("({0} REGEXP ('^(?:' || {1} || ')$'))"));
+        register(DatabaseProduct.H2, "regexp_replace", template("REGEXP_REPLACE({0}, {1}, {2})"));
+        register(DatabaseProduct.H2, "strpos", template("LOCATE({1}, {0})"));
+        register(DatabaseProduct.H2, "length", template("LENGTH({0})"));
+        register(DatabaseProduct.H2, "lpad", rename("LPAD"));
+        register(DatabaseProduct.H2, "rpad", rename("RPAD"));
+        register(DatabaseProduct.H2, "left", template("LEFT({0}, {1})"));
+        register(DatabaseProduct.H2, "right", template("RIGHT({0}, {1})"));
+    }
+
+    private JdbcFunctionTranslations() {
+    }
+
+    /**
+     * Translates a call of a Drill function into the SQL of the database.
+     */
+    public interface Translation {
+
+        /**
+         * Returns whether the call can be translated, e.g. an argument must be a literal.
+         */
+        default boolean supports(RexCall call) {
+            return true;
+        }
+
+        /**
+         * @param call     call of the Drill function
+         * @param operands SQL of the operands
+         * @return SQL of the call
+         */
+        String translate(SqlCall call, List<String> operands);
+    }
+
+    /**
+     * Registers or replaces the translation of the Drill function for the database.
+     */
+    public static void register(DatabaseProduct product, String function, Translation translation) {
+        TRANSLATIONS.computeIfAbsent(product, p -> new ConcurrentHashMap<>())
+                .put(function.toLowerCase(Locale.ROOT), translation);
+    }
+
+    /**
+     * @return translation of the Drill function, or null if the database has no equivalent
+     */
+    public static Translation get(DatabaseProduct product, String function) {
+        final Map<String, Translation> translations = TRANSLATIONS.get(product);
+        return translations == null ? null : translations.get(function.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Translation by a template, {@code {n}} is replaced by the operand n. The call must have as many operands
+     * as the template uses.
+     */
+    public static Translation template(String template) {
+        final Matcher matcher = PLACEHOLDER.matcher(template);
+        int count = 0;
+        while (matcher.find()) {
+            count = Math.max(count, Integer.parseInt(matcher.group(1)) + 1);
+        }
+        final int operandCount = count;
+
+        return new Translation() {
+            @Override
+            public boolean supports(RexCall call) {
+                return call.getOperands().size() == operandCount;
+            }
+
+            @Override
+            public String translate(SqlCall call, List<String> operands) {
+                final Matcher placeholders = PLACEHOLDER.matcher(template);
+                final StringBuffer sql = new StringBuffer();
+                while (placeholders.find()) {
+                    placeholders.appendReplacement(sql,
+                            Matcher.quoteReplacement(operands.get(Integer.parseInt(placeholders.group(1)))));
+                }
+                placeholders.appendTail(sql);
+                return sql.toString();
+            }
+        };
+    }
+
+    /**
+     * Translation into a function of the database with the same arguments.
+     */
+    public static Translation rename(String name) {
+        return (call, operands) -> name + "(" + String.join(", ", operands) + ")";
+    }
+
+    /**
+     * Unparses the call by the translation. Operands are unparsed separately with the dialect of the writer,
+     * binary operators in them get parentheses.
+     */
+    static void unparse(SqlWriter writer, SqlCall call, Translation translation) {
+        final List<String> operands = new ArrayList<>(call.operandCount());
+        for (SqlNode operand : call.getOperandList()) {
+            final SqlPrettyWriter operandWriter = new SqlPrettyWriter(writer.getDialect());
+            operandWriter.setQuoteAllIdentifiers(false);
+            operandWriter.setSelectListItemsOnSeparateLines(false);
+            operandWriter.setIndentation(0);
+            operand.unparse(operandWriter, 100, 100);
+            operands.add(operandWriter.toSqlString().getSql());
+        }
+        writer.print(translation.translate(call, operands) + " ");
+    }
+
+    // DATE_TRUNC('DAY', ts) -> TRUNC(ts, 'DD'), единица должна быть литералом
+    private static final class OracleDateTrunc implements Translation {
+
+        @Override
+        public boolean supports(RexCall call) {
+            final RexNode unit = call.getOperands().get(0);
+            return call.getOperands().size() == 2
+                    && unit instanceof RexLiteral
+                    && ORACLE_TRUNC_UNITS.containsKey(unitName(RexLiteral.stringValue(unit)));
+        }
+
+        @Override
+        public String translate(SqlCall call, List<String> operands) {
+            final String unit = ((SqlLiteral) call.operand(0)).toValue();
+            return "TRUNC(" + operands.get(1) + ", '" + ORACLE_TRUNC_UNITS.get(unitName(unit)) + "')";
+        }
+
+        private static String unitName(String unit) {
+            return unit == null ? null : unit.toUpperCase(Locale.ROOT);
+        }
+    }
+
+    // Drill LEFT/RIGHT с отрицательной длиной отбрасывают символы: Oracle SUBSTR вернет NULL, MySQL - пустую
+    // строку, SQL Server - ошибку. Такие вызовы переводятся, только если длина - неотрицательный литерал
+    private static final class NonNegativeLength implements Translation {
+
+        private final Translation translation;
+
+        NonNegativeLength(Translation translation) {
+            this.translation = translation;
+        }
+
+        @Override
+        public boolean supports(RexCall call) {
+            if (!translation.supports(call)) {
+                return false;
+            }
+            final RexNode length = call.getOperands().get(1);
+            return length instanceof RexLiteral
+                    && !((RexLiteral) length).isNull()
+                    && RexLiteral.intValue(length) >= 0;
+        }
+
+        @Override
+        public String translate(SqlCall call, List<String> operands) {
+            return translation.translate(call, operands);
+        }
+    }
+}
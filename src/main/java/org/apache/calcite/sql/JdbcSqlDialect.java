@@ -18,13 +18,24 @@
 package org.apache.calcite.sql;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import org.apache.calcite.config.NullCollation;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.sql.dialect.AnsiSqlDialect;
+import org.apache.calcite.sql.dialect.DerbySqlDialect;
+import org.apache.calcite.sql.dialect.H2SqlDialect;
+import org.apache.calcite.sql.dialect.MssqlSqlDialect;
+import org.apache.calcite.sql.dialect.MysqlSqlDialect;
+import org.apache.calcite.sql.dialect.OracleSqlDialect;
 import org.apache.calcite.sql.dialect.PostgresqlSqlDialect;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.type.OperandTypes;
+import org.apache.calcite.sql.type.ReturnTypes;
 import org.apache.drill.common.exceptions.UserException;
+import org.apache.drill.exec.planner.sql.DrillSqlOperator;
 
 import javax.sql.DataSource;
 import java.io.IOException;
@@ -32,7 +43,9 @@ import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Oleg Zinoviev
@@ -42,7 +55,127 @@ import java.util.Map;
 public class JdbcSqlDialect extends SqlDialect {
 
     private final static Map<Class<? extends SqlDialect>, UnparseOffsetFetchOverride> SUPPORTS_FETCH_OFFSET =
-            ImmutableMap.of(PostgresqlSqlDialect.class, UnparseOffsetFetchOverride.EMPTY);
+            ImmutableMap.<Class<? extends SqlDialect>, UnparseOffsetFetchOverride>builder()
+                    .put(PostgresqlSqlDialect.class, UnparseOffsetFetchOverride.EMPTY)
+                    .put(MysqlSqlDialect.class, JdbcSqlDialect::unparseLimitOffset)
+                    .put(H2SqlDialect.class, JdbcSqlDialect::unparseOffsetFetchNext)
+                    .put(DerbySqlDialect.class, JdbcSqlDialect::unparseOffsetFetchNext)
+                    // Нужен ORDER BY, см. unparseCall; версии до 2012 не поддерживаются, см. supportsOffsetFetch
+                    .put(MssqlSqlDialect.class, JdbcSqlDialect::unparseOffsetFetchNext)
+                    // OFFSET/FETCH появились в 12c, в старых версиях ROWNUM, см. unparseCall
+                    .put(OracleSqlDialect.class, JdbcSqlDialect::unparseOffsetFetchNext)
+                    .build();
+
+    /**
+     * First Oracle version with {@code OFFSET ... FETCH NEXT ...}.
+     */
+    private static final int ORACLE_OFFSET_FETCH_VERSION = 12;
+
+    /**
+     * SQL Server 2012, the first version with {@code OFFSET ... FETCH NEXT ...}.
+     */
+    private static final int MSSQL_2012_VERSION = 11;
+
+    /**
+     * First MySQL version with window functions.
+     */
+    private static final int MYSQL_WINDOW_VERSION = 8;
+
+    /**
+     * MariaDB 10.2, the first version with window functions.
+     */
+    private static final int MARIADB_WINDOW_MAJOR_VERSION = 10;
+    private static final int MARIADB_WINDOW_MINOR_VERSION = 2;
+
+    /**
+     * First PostgreSQL version that scans only the blocks of a {@code ctid} range, older versions read the whole table.
+     */
+    private static final int POSTGRES_TID_RANGE_SCAN_VERSION = 14;
+
+    /**
+     * {@code ROWNUM} pseudo column of Oracle, unparsed without parentheses.
+     */
+    private static final SqlFunction ROWNUM = new SqlFunction("ROWNUM",
+            SqlKind.OTHER_FUNCTION,
+            ReturnTypes.BIGINT,
+            null,
+            OperandTypes.NILADIC,
+            SqlFunctionCategory.SYSTEM) {
+        @Override
+        public SqlSyntax getSyntax() {
+            return SqlSyntax.FUNCTION_ID;
+        }
+    };
+
+    /**
+     * Aggregate functions every database computes, also with {@code DISTINCT}.
+     */
+    private final static Set<String> STANDARD_AGGREGATES = ImmutableSet.of("COUNT", "SUM", "AVG", "MIN", "MAX");
+
+    private final static Set<String> STATISTICAL_AGGREGATES =
+            ImmutableSet.of("STDDEV", "STDDEV_POP", "STDDEV_SAMP", "VARIANCE", "VAR_POP", "VAR_SAMP");
+
+    /**
+     * Aggregate functions besides {@link #STANDARD_AGGREGATES} the database has under the same name and with the same
+     * semantics as Drill. Functions are unparsed by name, so a function missing here is computed by Drill.
+     */
+    private final static Map<DatabaseProduct, Set<String>> AGGREGATE_FUNCTIONS = ImmutableMap.<DatabaseProduct, Set<String>>builder()
+            .put(DatabaseProduct.POSTGRESQL, ImmutableSet.<String>builder()
+                    .addAll(STATISTICAL_AGGREGATES)
+                    .add("BIT_AND", "BIT_OR", "BOOL_AND", "BOOL_OR", "EVERY")
+                    .build())
+            .put(DatabaseProduct.REDSHIFT, ImmutableSet.<String>builder()
+                    .addAll(STATISTICAL_AGGREGATES)
+                    .add("BIT_AND", "BIT_OR", "BOOL_AND", "BOOL_OR")
+                    .build())
+            // STDDEV и VARIANCE MySQL - статистики генеральной совокупности, в Drill - выборки.
+            // BIT_AND и BIT_OR MySQL без строк возвращают 18446744073709551615 и 0 вместо NULL
+            .put(DatabaseProduct.MYSQL, ImmutableSet.of("STDDEV_POP", "STDDEV_SAMP", "VAR_POP", "VAR_SAMP"))
+            .put(DatabaseProduct.ORACLE, STATISTICAL_AGGREGATES)
+            .put(DatabaseProduct.H2, ImmutableSet.of(
+                    "STDDEV_POP", "STDDEV_SAMP", "VAR_POP", "VAR_SAMP", "BIT_AND", "BIT_OR", "BOOL_AND", "BOOL_OR"))
+            .put(DatabaseProduct.HSQLDB, ImmutableSet.of(
+                    "STDDEV_POP", "STDDEV_SAMP", "VAR_POP", "VAR_SAMP", "EVERY"))
+            // STDDEV и VARIANCE DB2 - статистики генеральной совокупности
+            .put(DatabaseProduct.DB2, ImmutableSet.of("STDDEV_SAMP", "VAR_SAMP"))
+            // MS SQL Server: STDEV, VAR - другие имена, считает Drill
+            .build();
+
+    /**
+     * Window functions whose frame is defined by the function itself, the frame clause is not unparsed for them.
+     */
+    private final static Set<SqlKind> RANKING_WINDOW_FUNCTIONS = ImmutableSet.of(SqlKind.ROW_NUMBER, SqlKind.RANK,
+            SqlKind.DENSE_RANK, SqlKind.PERCENT_RANK, SqlKind.CUME_DIST, SqlKind.NTILE, SqlKind.LAG, SqlKind.LEAD);
+
+    private final static Set<SqlKind> WINDOW_AGGREGATES = ImmutableSet.of(SqlKind.COUNT, SqlKind.SUM, SqlKind.AVG,
+            SqlKind.MIN, SqlKind.MAX);
+
+    private final static Set<SqlKind> OFFSET_WINDOW_FUNCTIONS = ImmutableSet.of(SqlKind.LAG, SqlKind.LEAD,
+            SqlKind.FIRST_VALUE, SqlKind.LAST_VALUE, SqlKind.PERCENT_RANK, SqlKind.CUME_DIST);
+
+    /**
+     * {@code SPLIT_BUCKET(n, col1, col2...)} - number of the hash bucket (0 .. n - 1) of the row.
+     * Has no standard equivalent, hash function is chosen by the database, see {@link #supportsSplitBucket()}.
+     */
+    public static final SqlFunction SPLIT_BUCKET = new SqlFunction("SPLIT_BUCKET",
+            SqlKind.OTHER_FUNCTION,
+            ReturnTypes.BIGINT,
+            null,
+            OperandTypes.VARIADIC,
+            SqlFunctionCategory.NUMERIC);
+
+    /**
+     * {@code ROW_LOCATOR_RANGE(from, to)} - whether physical location of the row is within the block range,
+     * negative bound means unbounded. For Oracle {@code ROW_LOCATOR_RANGE(fromDataObjectId, fromRelativeFileNo,
+     * fromBlock, toDataObjectId, toRelativeFileNo, toBlock)} - range of ROWID from the first row of the block to the
+     * first row of another block, negative data object id means unbounded. See {@link #supportsRowLocatorRange()}.
+     */
+    public static final SqlFunction ROW_LOCATOR_RANGE = new SqlFunction("ROW_LOCATOR_RANGE",
+            SqlKind.OTHER_FUNCTION,
+            ReturnTypes.BOOLEAN,
+            null,
+            OperandTypes.VARIADIC,
+            SqlFunctionCategory.SYSTEM);
 
     private final static ImmutableSortedMap<String, DatabaseProduct> DRIVERS_MAP = ImmutableSortedMap.<String, DatabaseProduct>orderedBy(String::compareToIgnoreCase)
             .put("com.simba.googlebigquery.jdbc42.Driver", DatabaseProduct.BIG_QUERY)
@@ -75,31 +208,70 @@ public class JdbcSqlDialect extends SqlDialect {
     public static JdbcSqlDialect createDialect(DatabaseMetaData databaseMetaData, DataSource dataSource) {
         SqlDialectFactory factory = new SqlDialectFactoryImpl();
         SqlDialect sqlDialect = factory.create(databaseMetaData);
-        return new JdbcSqlDialect(sqlDialect, dataSource);
+        int databaseMajorVersion;
+        int databaseMinorVersion;
+        try {
+            databaseMajorVersion = databaseMetaData.getDatabaseMajorVersion();
+            databaseMinorVersion = databaseMetaData.getDatabaseMinorVersion();
+        } catch (SQLException | RuntimeException e) {
+            databaseMajorVersion = -1;
+            databaseMinorVersion = -1;
+        }
+        return new JdbcSqlDialect(sqlDialect, dataSource, databaseMajorVersion, databaseMinorVersion,
+                isMariaDb(databaseMetaData));
+    }
+
+    // Драйвер MariaDB представляется как MySQL, версии MariaDB (10.x) отличаются только строкой версии
+    private static boolean isMariaDb(DatabaseMetaData databaseMetaData) {
+        try {
+            final String product = databaseMetaData.getDatabaseProductName() + " "
+                    + databaseMetaData.getDatabaseProductVersion();
+            return product.toLowerCase(Locale.ROOT).contains("mariadb");
+        } catch (SQLException | RuntimeException e) {
+            return false;
+        }
     }
 
     public static JdbcSqlDialect createByDriverName(String driver, DataSource dataSource) {
         DatabaseProduct product = DRIVERS_MAP.get(driver);
         if (product == null) {
-            return new JdbcSqlDialect(AnsiSqlDialect.DEFAULT, dataSource);
+            return new JdbcSqlDialect(AnsiSqlDialect.DEFAULT, dataSource, -1, -1, false);
         }
 
-        return new JdbcSqlDialect(product.getDialect(), dataSource);
+        return new JdbcSqlDialect(product.getDialect(), dataSource, -1, -1, false);
     }
 
     private final SqlDialect dialect;
     private final DataSource dataSource;
+    /**
+     * -1 if unknown.
+     */
+    private final int databaseMajorVersion;
+    /**
+     * -1 if unknown.
+     */
+    private final int databaseMinorVersion;
+    /**
+     * Whether the database is MariaDB, which is reported as MySQL.
+     */
+    private final boolean mariaDb;
 
     private volatile SqlIdentifierValidator validator;
 
     private JdbcSqlDialect(SqlDialect dialect,
-                           DataSource dataSource) {
+                           DataSource dataSource,
+                           int databaseMajorVersion,
+                           int databaseMinorVersion,
+                           boolean mariaDb) {
         super(emptyContext()
                 .withDatabaseProduct(DatabaseProduct.UNKNOWN)
                 .withIdentifierQuoteString("`"));
 
         this.dialect = dialect;
         this.dataSource = dataSource;
+        this.databaseMajorVersion = databaseMajorVersion;
+        this.databaseMinorVersion = databaseMinorVersion;
+        this.mariaDb = mariaDb;
     }
 
     @Override
@@ -123,6 +295,306 @@ public class JdbcSqlDialect extends SqlDialect {
 
 
 
+    /**
+     * Returns table reference with a sampling clause that reads approximately the given percent of table rows,
+     * or null if the database does not support table sampling.
+     */
+    @SuppressWarnings("deprecation")
+    public String tableSample(String table, int percent) {
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+                return table + " TABLESAMPLE SYSTEM (" + percent + ")";
+            case MSSQL:
+                return table + " TABLESAMPLE (" + percent + " PERCENT)";
+            case ORACLE:
+                return table + " SAMPLE (" + percent + ")";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns whether {@link #SPLIT_BUCKET} can be unparsed for the database.
+     */
+    @SuppressWarnings("deprecation")
+    public boolean supportsSplitBucket() {
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+            case MYSQL:
+            case ORACLE:
+            case MSSQL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Hash expressions never return NULL, so each row gets exactly one bucket.
+    @SuppressWarnings("deprecation")
+    private void unparseSplitBucket(SqlWriter writer, SqlCall call) {
+        final int buckets = ((SqlLiteral) call.operand(0)).intValue(true);
+        final List<SqlNode> columns = call.getOperandList().subList(1, call.operandCount());
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+                writer.print("MOD(hashtext(concat_ws('|', ");
+                unparseList(writer, columns, ", ");
+                writer.print(")) & 2147483647, " + buckets + ")");
+                break;
+            case MYSQL:
+                writer.print("MOD(CRC32(CONCAT_WS('|', ");
+                unparseList(writer, columns, ", ");
+                writer.print(")), " + buckets + ")");
+                break;
+            case ORACLE:
+                writer.print("ORA_HASH(");
+                unparseList(writer, columns, " || '|' || ");
+                writer.print(" || '|', " + (buckets - 1) + ")");
+                break;
+            case MSSQL:
+                writer.print("(ABS(CAST(CHECKSUM(");
+                unparseList(writer, columns, ", ");
+                writer.print(") AS BIGINT)) % " + buckets + ")");
+                break;
+            default:
+                throw new UnsupportedOperationException("SPLIT_BUCKET is not supported by " + dialect.getDatabaseProduct());
+        }
+    }
+
+    /**
+     * Returns whether {@link #ROW_LOCATOR_RANGE} can be unparsed for the database.
+     */
+    @SuppressWarnings("deprecation")
+    public boolean supportsRowLocatorRange() {
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+                return databaseMajorVersion >= POSTGRES_TID_RANGE_SCAN_VERSION;
+            case ORACLE:
+            case H2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void unparseRowLocatorRange(SqlWriter writer, SqlCall call) {
+        final List<SqlNode> operands = call.getOperandList();
+        final long[] values = new long[operands.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ((SqlLiteral) operands.get(i)).longValue(true);
+        }
+
+        final SqlWriter.Frame frame = writer.startList("(", ")");
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+                unparseBounds(writer, "ctid", "'(" + values[0] + ",0)'::tid", "'(" + values[1] + ",0)'::tid",
+                        values[0] >= 0, values[1] >= 0);
+                break;
+            case H2:
+                unparseBounds(writer, "_ROWID_", String.valueOf(values[0]), String.valueOf(values[1]),
+                        values[0] >= 0, values[1] >= 0);
+                break;
+            case ORACLE:
+                // ROWID упорядочены по объекту, файлу, блоку и строке
+                unparseBounds(writer, "ROWID",
+                        "DBMS_ROWID.ROWID_CREATE(1, " + values[0] + ", " + values[1] + ", " + values[2] + ", 0)",
+                        "DBMS_ROWID.ROWID_CREATE(1, " + values[3] + ", " + values[4] + ", " + values[5] + ", 0)",
+                        values[0] >= 0, values[3] >= 0);
+                break;
+            default:
+                throw new UnsupportedOperationException("ROW_LOCATOR_RANGE is not supported by " + dialect.getDatabaseProduct());
+        }
+        writer.endList(frame);
+    }
+
+    private static void unparseBounds(SqlWriter writer, String locator, String from, String to,
+                                      boolean hasFrom, boolean hasTo) {
+        if (hasFrom) {
+            writer.print(locator + " >= " + from);
+        }
+        if (hasFrom && hasTo) {
+            writer.print(" AND ");
+        }
+        if (hasTo) {
+            writer.print(locator + " < " + to);
+        }
+    }
+
+    /**
+     * Returns translation of the Drill function for the database, or null if the function can not be pushed down.
+     */
+    @SuppressWarnings("deprecation")
+    public JdbcFunctionTranslations.Translation getFunctionTranslation(String function) {
+        return JdbcFunctionTranslations.get(dialect.getDatabaseProduct(), function);
+    }
+
+    /**
+     * Returns whether the database computes the window function. Frames are limited to unbounded and current row
+     * bounds by the rule, all the databases here support them, except SQL Server before 2012.
+     *
+     * @param ordered whether the window has ORDER BY
+     */
+    @SuppressWarnings("deprecation")
+    public boolean supportsWindowFunction(SqlAggFunction function, boolean ordered) {
+        final SqlKind kind = function.getKind();
+        if (!RANKING_WINDOW_FUNCTIONS.contains(kind) && !WINDOW_AGGREGATES.contains(kind)
+                && !OFFSET_WINDOW_FUNCTIONS.contains(kind)) {
+            return false;
+        }
+        switch (dialect.getDatabaseProduct()) {
+            case POSTGRESQL:
+            case ORACLE:
+            case DB2:
+            case REDSHIFT:
+            case VERTICA:
+            case TERADATA:
+                return true;
+            case MSSQL:
+                // LAG, LEAD, FIRST_VALUE..., а также ORDER BY и рамки у агрегатов появились в SQL Server 2012.
+                // Рамку окна без ORDER BY не пишем, см. rewriteWindowFrame
+                if (OFFSET_WINDOW_FUNCTIONS.contains(kind) || ordered && WINDOW_AGGREGATES.contains(kind)) {
+                    return databaseMajorVersion >= MSSQL_2012_VERSION;
+                }
+                return true;
+            case MYSQL:
+                if (mariaDb) {
+                    return databaseMajorVersion > MARIADB_WINDOW_MAJOR_VERSION
+                            || databaseMajorVersion == MARIADB_WINDOW_MAJOR_VERSION
+                            && databaseMinorVersion >= MARIADB_WINDOW_MINOR_VERSION;
+                }
+                return databaseMajorVersion >= MYSQL_WINDOW_VERSION;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Calcite writes a frame for every window, but MS SQL Server and Oracle reject it for ranking functions, and
+     * SQL Server before 2012 for any function. The frame is dropped for ranking functions and for windows without
+     * ORDER BY covering the whole partition, which is the default frame then.
+     */
+    private static SqlCall rewriteWindowFrame(SqlCall over) {
+        final SqlCall function = over.operand(0);
+        final SqlNode window = over.operand(1);
+        if (!(window instanceof SqlWindow)) {
+            return null;
+        }
+        final SqlWindow frame = (SqlWindow) window;
+        if (frame.getLowerBound() == null && frame.getUpperBound() == null) {
+            return null;
+        }
+        final boolean wholePartition = frame.getOrderList().size() == 0
+                && SqlWindow.isUnboundedPreceding(frame.getLowerBound())
+                && SqlWindow.isUnboundedFollowing(frame.getUpperBound());
+        if (!RANKING_WINDOW_FUNCTIONS.contains(function.getOperator().getKind()) && !wholePartition) {
+            return null;
+        }
+        final SqlWindow noFrame = SqlWindow.create(frame.getDeclName(), frame.getRefName(), frame.getPartitionList(),
+                frame.getOrderList(), frame.isRows, null, null, null, frame.getParserPosition());
+        return SqlStdOperatorTable.OVER.createCall(over.getParserPosition(), function, noFrame);
+    }
+
+    /**
+     * Returns whether OFFSET is pushed down besides FETCH. Old Oracle versions limit rows with {@code ROWNUM}, which
+     * can not skip rows without an extra column in the result.
+     */
+    public boolean supportsOffset() {
+        return supportsOffsetFetch() && !isRowNumLimit();
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean isRowNumLimit() {
+        return dialect.getDatabaseProduct() == DatabaseProduct.ORACLE && databaseMajorVersion < ORACLE_OFFSET_FETCH_VERSION;
+    }
+
+    /**
+     * Rewrites a query with FETCH or OFFSET the database can not run as is, or returns null.
+     */
+    @SuppressWarnings("deprecation")
+    private SqlSelect rewriteOffsetFetch(SqlSelect select) {
+        if (select.getFetch() == null && select.getOffset() == null) {
+            return null;
+        }
+        final SqlParserPos pos = select.getParserPosition();
+        if (isRowNumLimit()) {
+            // SELECT * FROM (...) WHERE ROWNUM <= n, сортировка подзапроса сохраняется
+            if (select.getOffset() != null) {
+                throw new UnsupportedOperationException("OFFSET is not supported by Oracle " + databaseMajorVersion);
+            }
+            final SqlSelect query = copy(select, select.getOrderList(), null, null);
+            return new SqlSelect(pos, null, SqlNodeList.of(SqlIdentifier.star(pos)), query,
+                    SqlStdOperatorTable.LESS_THAN_OR_EQUAL.createCall(pos, ROWNUM.createCall(pos), select.getFetch()),
+                    null, null, null, null, null, null);
+        }
+        if (dialect.getDatabaseProduct() == DatabaseProduct.MSSQL
+                && (select.getOrderList() == null || select.getOrderList().size() == 0)) {
+            // OFFSET/FETCH в MS SQL Server допустимы только после ORDER BY
+            final SqlSelect noOrder = new SqlSelect(pos, null, SqlNodeList.of(SqlLiteral.createNull(pos)),
+                    null, null, null, null, null, null, null, null);
+            return copy(select, SqlNodeList.of(noOrder), select.getOffset(), select.getFetch());
+        }
+        return null;
+    }
+
+    private static SqlSelect copy(SqlSelect select, SqlNodeList orderBy, SqlNode offset, SqlNode fetch) {
+        return new SqlSelect(select.getParserPosition(), select.keywordList, select.getSelectList(), select.getFrom(),
+                select.getWhere(), select.getGroup(), select.getHaving(), select.getWindowList(), orderBy, offset, fetch);
+    }
+
+    // LIMIT n OFFSET m
+    private static void unparseLimitOffset(SqlWriter writer, SqlNode offset, SqlNode fetch) {
+        writer.newlineAndIndent();
+        final SqlWriter.Frame fetchFrame = writer.startList(SqlWriter.FrameTypeEnum.FETCH);
+        writer.keyword("LIMIT");
+        if (fetch != null) {
+            fetch.unparse(writer, -1, -1);
+        } else {
+            // Без LIMIT MySQL не принимает OFFSET, берем максимальное значение из документации
+            writer.print("18446744073709551615");
+        }
+        writer.endList(fetchFrame);
+        if (offset != null) {
+            writer.newlineAndIndent();
+            final SqlWriter.Frame offsetFrame = writer.startList(SqlWriter.FrameTypeEnum.OFFSET);
+            writer.keyword("OFFSET");
+            offset.unparse(writer, -1, -1);
+            writer.endList(offsetFrame);
+        }
+    }
+
+    // OFFSET m ROWS FETCH NEXT n ROWS ONLY, OFFSET пишем всегда: MS SQL Server не принимает FETCH без него
+    private static void unparseOffsetFetchNext(SqlWriter writer, SqlNode offset, SqlNode fetch) {
+        writer.newlineAndIndent();
+        final SqlWriter.Frame offsetFrame = writer.startList(SqlWriter.FrameTypeEnum.OFFSET);
+        writer.keyword("OFFSET");
+        if (offset != null) {
+            offset.unparse(writer, -1, -1);
+        } else {
+            writer.print("0");
+        }
+        writer.keyword("ROWS");
+        writer.endList(offsetFrame);
+        if (fetch != null) {
+            writer.newlineAndIndent();
+            final SqlWriter.Frame fetchFrame = writer.startList(SqlWriter.FrameTypeEnum.FETCH);
+            writer.keyword("FETCH");
+            writer.keyword("NEXT");
+            fetch.unparse(writer, -1, -1);
+            writer.keyword("ROWS");
+            writer.keyword("ONLY");
+            writer.endList(fetchFrame);
+        }
+    }
+
+    private static void unparseList(SqlWriter writer, List<SqlNode> nodes, String separator) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i > 0) {
+                writer.print(separator);
+            }
+            nodes.get(i).unparse(writer, 0, 0);
+        }
+    }
+
     //region SqlDialect delegation
     @Override
     public String quoteStringLiteral(String val) {
@@ -131,6 +603,35 @@ public class JdbcSqlDialect extends SqlDialect {
 
     @Override
     public void unparseCall(SqlWriter writer, SqlCall call, int leftPrec, int rightPrec) {
+        if (call.getOperator() == SPLIT_BUCKET) {
+            unparseSplitBucket(writer, call);
+            return;
+        }
+        if (call.getOperator() == ROW_LOCATOR_RANGE) {
+            unparseRowLocatorRange(writer, call);
+            return;
+        }
+        if (call.getOperator() instanceof DrillSqlOperator) {
+            final JdbcFunctionTranslations.Translation translation = getFunctionTranslation(call.getOperator().getName());
+            if (translation != null) {
+                JdbcFunctionTranslations.unparse(writer, call, translation);
+                return;
+            }
+        }
+        if (call.getOperator() == SqlStdOperatorTable.OVER) {
+            final SqlCall rewritten = rewriteWindowFrame(call);
+            if (rewritten != null) {
+                dialect.unparseCall(writer, rewritten, leftPrec, rightPrec);
+                return;
+            }
+        }
+        if (call instanceof SqlSelect) {
+            final SqlSelect rewritten = rewriteOffsetFetch((SqlSelect) call);
+            if (rewritten != null) {
+                dialect.unparseCall(writer, rewritten, leftPrec, rightPrec);
+                return;
+            }
+        }
         dialect.unparseCall(writer, call, leftPrec, rightPrec);
     }
 
@@ -181,6 +682,10 @@ public class JdbcSqlDialect extends SqlDialect {
         return dialect.supportsCharSet();
     }
 
+    /**
+     * Checks kinds only, the aggregate rule checks the functions themselves with
+     * {@link #supportsAggregateFunction(SqlAggFunction, boolean, boolean)} before creating the aggregate.
+     */
     @Override
     public boolean supportsAggregateFunction(SqlKind kind) {
         switch (kind) {
@@ -190,12 +695,32 @@ public class JdbcSqlDialect extends SqlDialect {
             case AVG:
             case MIN:
             case MAX:
+            case STDDEV_POP:
+            case STDDEV_SAMP:
+            case VAR_POP:
+            case VAR_SAMP:
+            case OTHER_FUNCTION:
                 return true;
         }
         return false;
         //return dialect.supportsAggregateFunction(kind);
     }
 
+    /**
+     * Returns whether the database computes the aggregate function, see {@link #AGGREGATE_FUNCTIONS}.
+     *
+     * @param extended whether functions besides COUNT, SUM, AVG, MIN and MAX may be pushed down
+     */
+    @SuppressWarnings("deprecation")
+    public boolean supportsAggregateFunction(SqlAggFunction function, boolean distinct, boolean extended) {
+        final String name = function.getName().toUpperCase(Locale.ROOT);
+        if (STANDARD_AGGREGATES.contains(name)) {
+            return true;
+        }
+        return extended && !distinct
+                && AGGREGATE_FUNCTIONS.getOrDefault(dialect.getDatabaseProduct(), ImmutableSet.of()).contains(name);
+    }
+
     @Override
     public CalendarPolicy getCalendarPolicy() {
         return dialect.getCalendarPolicy();
@@ -224,8 +749,10 @@ public class JdbcSqlDialect extends SqlDialect {
     @SuppressWarnings("deprecation")
     @Override
     public boolean supportsOffsetFetch() {
-        return dialect.supportsOffsetFetch()
-                && SUPPORTS_FETCH_OFFSET.containsKey(dialect.getClass());
+        final UnparseOffsetFetchOverride override = SUPPORTS_FETCH_OFFSET.get(dialect.getClass());
+        return override != null
+                && (override != UnparseOffsetFetchOverride.EMPTY || dialect.supportsOffsetFetch())
+                && (dialect.getDatabaseProduct() != DatabaseProduct.MSSQL || databaseMajorVersion >= MSSQL_2012_VERSION);
     }
 
     @Override
@@ -37,7 +37,8 @@ public class DrillJdbcConvention extends JdbcConvention {
     private static final JdbcPrule JDBC_PRULE_INSTANCE = new JdbcPrule();
     // Rules from Calcite's JdbcRules class that we want to avoid using.
     private static String[] RULES_TO_AVOID = {
-            "JdbcToEnumerableConverterRule", "JdbcFilterRule", "JdbcProjectRule", "JdbcSortRule"
+            "JdbcToEnumerableConverterRule", "JdbcFilterRule", "JdbcProjectRule", "JdbcSortRule", "JdbcJoinRule",
+            "JdbcAggregateRule"
     };
 
     private JdbcStoragePlugin plugin;
@@ -56,10 +57,13 @@ public class DrillJdbcConvention extends JdbcConvention {
         builder.add(new DrillJdbcRuleBase.DrillJdbcProjectRule(this));
         builder.add(new DrillJdbcRuleBase.DrillJdbcFilterRule(this));
         builder.add(new DrillJdbcRuleBase.DrillJdbcSortRule(this));
+        builder.add(new DrillJdbcRuleBase.DrillJdbcJoinRule(this));
+        builder.add(new DrillJdbcRuleBase.DrillJdbcWindowRule(this));
 
-        if (plugin.getConfig().isUseExtendedAggregatePushDown()) {
-            builder.add(new DrillJdbcRuleBase.DrillJdbcAggregateRule(this));
-        }
+        builder.add(new DrillJdbcRuleBase.DrillJdbcAggregateRule(this, plugin.getConfig().isUseExtendedAggregatePushDown()));
+
+        builder.addAll(JdbcSemiJoinInListRule.rules(plugin));
+        builder.addAll(JdbcSemiJoinRule.rules(this));
 
         outside:
         for (RelOptRule rule : JdbcRules.rules(this)) {
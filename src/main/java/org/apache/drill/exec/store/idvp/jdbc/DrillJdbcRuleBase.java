@@ -21,27 +21,44 @@ import com.google.common.base.Predicates;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.apache.calcite.adapter.jdbc.JdbcConvention;
 import org.apache.calcite.adapter.jdbc.JdbcRules;
 import org.apache.calcite.plan.*;
+import org.apache.calcite.plan.volcano.RelSubset;
 import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
 import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.Window;
 import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
 import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.logical.LogicalWindow;
+import org.apache.calcite.rel.metadata.RelMdUtil;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
-import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.*;
+import org.apache.calcite.sql.JdbcSqlDialect;
 import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlOperator;
 import org.apache.drill.exec.planner.logical.DrillRelFactories;
 import org.apache.drill.exec.planner.sql.DrillCalciteSqlAggFunctionWrapper;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -55,7 +72,7 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
                     new CacheLoader<RexNode, Boolean>() {
                         @ParametersAreNonnullByDefault
                         public Boolean load(RexNode expr) {
-                            return JdbcExpressionCheck.isOnlyStandardExpressions(expr);
+                            return JdbcExpressionCheck.isOnlyStandardExpressions(expr, out.dialect);
                         }
                     });
 
@@ -133,10 +150,18 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
         }
     }
 
+    /**
+     * Pushes down aggregates when the database computes all their functions,
+     * see {@link JdbcSqlDialect#supportsAggregateFunction(SqlAggFunction, boolean, boolean)}.
+     * Functions wrapped by Drill are unwrapped, so they are unparsed as the database functions.
+     */
     static class DrillJdbcAggregateRule extends DrillJdbcRuleBase {
 
-        DrillJdbcAggregateRule(JdbcConvention out) {
+        private final boolean extended;
+
+        DrillJdbcAggregateRule(JdbcConvention out, boolean extended) {
             super(LogicalAggregate.class, Convention.NONE, out, "iDVPDrillJdbcAggregateRule");
+            this.extended = extended;
         }
 
         @Override
@@ -147,8 +172,8 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
             } else {
                 List<AggregateCall> unwrappedAggregates = new ArrayList<>();
 
-                boolean hasWrappedAggregate = unwrapCall(agg, unwrappedAggregates);
-                if (hasWrappedAggregate) {
+                boolean supported = unwrapCall(agg, unwrappedAggregates);
+                if (supported) {
                     RelTraitSet traitSet = agg.getTraitSet().replace(this.out);
 
                     try {
@@ -163,18 +188,21 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
                         return null;
                     }
                 } else {
-                    return null; //Обрабатываем стандартным правилом
+                    return null; // Агрегат считает Drill
                 }
             }
         }
 
+        /**
+         * @return whether the database computes all the aggregate functions
+         */
         private boolean unwrapCall(LogicalAggregate agg, List<AggregateCall> unwrappedAggregates) {
-            boolean hasWrappedAggregate = false;
             for (AggregateCall call : agg.getAggCallList()) {
+                AggregateCall unwrappedCall = call;
                 if (call.getAggregation() instanceof DrillCalciteSqlAggFunctionWrapper) {
                     DrillCalciteSqlAggFunctionWrapper wrapper = (DrillCalciteSqlAggFunctionWrapper) call.getAggregation();
                     if (wrapper.getOperator() instanceof SqlAggFunction) {
-                        AggregateCall unwrappedCall = AggregateCall.create(
+                        unwrappedCall = AggregateCall.create(
                                 (SqlAggFunction) wrapper.getOperator(),
                                 call.isDistinct(),
                                 call.isApproximate(),
@@ -182,14 +210,23 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
                                 call.filterArg,
                                 call.getType(),
                                 call.getName());
-                        unwrappedAggregates.add(unwrappedCall);
-                        hasWrappedAggregate = true;
                     }
-                } else {
-                    unwrappedAggregates.add(call);
                 }
+                // FILTER (WHERE ...) не переносим: не все СУБД его поддерживают
+                if (call.filterArg >= 0 || !supportsAggregateCall(unwrappedCall)) {
+                    return false;
+                }
+                unwrappedAggregates.add(unwrappedCall);
+            }
+            return true;
+        }
+
+        private boolean supportsAggregateCall(AggregateCall call) {
+            final SqlAggFunction function = call.getAggregation();
+            if (out.dialect instanceof JdbcSqlDialect) {
+                return ((JdbcSqlDialect) out.dialect).supportsAggregateFunction(function, call.isDistinct(), extended);
             }
-            return hasWrappedAggregate;
+            return function.getKind() != SqlKind.OTHER_FUNCTION && out.dialect.supportsAggregateFunction(function.getKind());
         }
     }
 
@@ -211,8 +248,10 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
 
                 //noinspection deprecation
                 if (out.dialect.supportsOffsetFetch()) {
-                    // Если диалект поддерживает
-                    return true;
+                    // Если диалект поддерживает. LIMIT без ORDER BY тоже сюда: это Sort с пустой сортировкой
+                    return sort.offset == null
+                            || !(out.dialect instanceof JdbcSqlDialect)
+                            || ((JdbcSqlDialect) out.dialect).supportsOffset();
                 }
 
                 return sort.offset == null && sort.fetch == null;
@@ -257,4 +296,268 @@ abstract class DrillJdbcRuleBase extends ConverterRule {
         }
     }
 
+    /**
+     * Pushes a join down only when the database returns fewer bytes than reading both inputs into Drill would.
+     * A many-to-many join may return much more rows than its inputs have, such a join is executed by Drill.
+     */
+    static class DrillJdbcJoinRule extends DrillJdbcRuleBase {
+
+        /**
+         * Average row size when the metadata knows nothing about the columns.
+         */
+        private static final double DEFAULT_FIELD_SIZE = 8;
+
+        /**
+         * How deep filters and projects are looked through to find the row count of an input before filtering.
+         */
+        private static final int MAX_UNFILTERED_DEPTH = 8;
+
+        DrillJdbcJoinRule(JdbcConvention out) {
+            super(LogicalJoin.class, Convention.NONE, out, "iDVPDrillJdbcJoinRule");
+        }
+
+        @Override
+        public boolean matches(RelOptRuleCall call) {
+            final LogicalJoin join = call.rel(0);
+            if (!JdbcStoragePlugin.canJoinOnCondition(join.getCondition(), out.dialect)
+                    || !supportsJoinType(join.getJoinType(), out.dialect)) {
+                return false;
+            }
+
+            final RelMetadataQuery mq = call.getMetadataQuery();
+            final RelNode left = join.getLeft();
+            final RelNode right = join.getRight();
+            final double leftRows = mq.getRowCount(left);
+            final double rightRows = mq.getRowCount(right);
+            final double leftRowSize = getAverageRowSize(mq, left);
+            final double rightRowSize = getAverageRowSize(mq, right);
+
+            final double inputBytes = leftRows * leftRowSize + rightRows * rightRowSize;
+            final double joinBytes = estimateRowCount(mq, join, leftRows, rightRows) * (leftRowSize + rightRowSize);
+            if (JdbcStoragePlugin.logger.isDebugEnabled()) {
+                JdbcStoragePlugin.logger.debug("Join {}: estimated {} bytes pushed down, {} bytes of inputs",
+                        join.getDigest(), joinBytes, inputBytes);
+            }
+            return joinBytes <= inputBytes;
+        }
+
+        @Override
+        public RelNode convert(RelNode rel) {
+            final LogicalJoin join = (LogicalJoin) rel;
+            final List<RelNode> newInputs = new ArrayList<>();
+            for (RelNode input : join.getInputs()) {
+                newInputs.add(convert(input, input.getTraitSet().replace(out).simplify()));
+            }
+            try {
+                return new JdbcRules.JdbcJoin(join.getCluster(),
+                        join.getTraitSet().replace(out),
+                        newInputs.get(0),
+                        newInputs.get(1),
+                        join.getCondition(),
+                        join.getVariablesSet(),
+                        join.getJoinType());
+            } catch (InvalidRelException e) {
+                JdbcStoragePlugin.logger.debug(e.toString());
+                return null;
+            }
+        }
+
+        /**
+         * Estimates the number of rows returned by the join. Calcite multiplies input sizes by the selectivity of
+         * the condition, which is far too pessimistic for joins on keys, so uniqueness and distinct counts of
+         * the keys are used when the metadata knows them. Filters of an input are assumed to remove its keys
+         * independently of the other input: a row of the fact table of a star join survives with the probability
+         * the filters of the dimension leave its key.
+         */
+        private static double estimateRowCount(RelMetadataQuery mq, LogicalJoin join, double leftRows, double rightRows) {
+            final JoinInfo joinInfo = JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
+            double rows;
+            if (joinInfo.leftKeys.isEmpty()) {
+                rows = leftRows * rightRows * RelMdUtil.guessSelectivity(join.getCondition());
+            } else if (Boolean.TRUE.equals(mq.areColumnsUnique(join.getRight(), joinInfo.rightSet()))) {
+                // Каждая строка слева соединяется не более чем с одной строкой справа, если её ключ не отфильтрован
+                rows = leftRows * filteredFraction(mq, join.getRight(), rightRows);
+            } else if (Boolean.TRUE.equals(mq.areColumnsUnique(join.getLeft(), joinInfo.leftSet()))) {
+                rows = rightRows * filteredFraction(mq, join.getLeft(), leftRows);
+            } else {
+                final Double leftDistinct = mq.getDistinctRowCount(join.getLeft(), joinInfo.leftSet(), null);
+                final Double rightDistinct = mq.getDistinctRowCount(join.getRight(), joinInfo.rightSet(), null);
+                if (leftDistinct == null || rightDistinct == null) {
+                    // Как в Drill: без статистики считаем, что соединение не размножает строки нефильтрованных входов
+                    final double leftUnfiltered = unfilteredRowCount(mq, join.getLeft(), leftRows, 0);
+                    final double rightUnfiltered = unfilteredRowCount(mq, join.getRight(), rightRows, 0);
+                    rows = Math.max(leftUnfiltered, rightUnfiltered)
+                            * filteredFraction(mq, join.getLeft(), leftRows)
+                            * filteredFraction(mq, join.getRight(), rightRows);
+                } else {
+                    rows = leftRows * rightRows / Math.max(1, Math.max(leftDistinct, rightDistinct));
+                }
+            }
+            if (!joinInfo.leftKeys.isEmpty() && !joinInfo.isEqui()) {
+                // Остаток условия отсекает часть строк
+                rows *= RelMdUtil.guessSelectivity(joinInfo.getRemaining(join.getCluster().getRexBuilder()));
+            }
+
+            switch (join.getJoinType()) {
+                case LEFT:
+                    return Math.max(rows, leftRows);
+                case RIGHT:
+                    return Math.max(rows, rightRows);
+                case FULL:
+                    return Math.max(rows, Math.max(leftRows, rightRows));
+                default:
+                    return rows;
+            }
+        }
+
+        /**
+         * @return fraction of rows of the input left by its filters
+         */
+        private static double filteredFraction(RelMetadataQuery mq, RelNode input, double rows) {
+            final double unfiltered = unfilteredRowCount(mq, input, rows, 0);
+            return unfiltered > 0 ? Math.min(1, rows / unfiltered) : 1;
+        }
+
+        /**
+         * Returns the row count of the input below its filters and projects.
+         */
+        private static double unfilteredRowCount(RelMetadataQuery mq, RelNode input, double rows, int depth) {
+            RelNode node = input;
+            if (node instanceof RelSubset) {
+                node = null;
+                for (RelNode rel : ((RelSubset) input).getRelList()) {
+                    if (rel instanceof Filter || rel instanceof Project) {
+                        node = rel;
+                        break;
+                    }
+                }
+            }
+            if (depth >= MAX_UNFILTERED_DEPTH || !(node instanceof Filter || node instanceof Project)) {
+                return rows;
+            }
+            final RelNode child = node.getInput(0);
+            return unfilteredRowCount(mq, child, Math.max(rows, mq.getRowCount(child)), depth + 1);
+        }
+
+        private static double getAverageRowSize(RelMetadataQuery mq, RelNode rel) {
+            final Double size = mq.getAverageRowSize(rel);
+            return size == null || size.isNaN() ? DEFAULT_FIELD_SIZE * rel.getRowType().getFieldCount() : size;
+        }
+
+        @SuppressWarnings("deprecation")
+        private static boolean supportsJoinType(JoinRelType joinType, SqlDialect dialect) {
+            // MySQL не умеет FULL JOIN
+            return joinType != JoinRelType.FULL || dialect.getDatabaseProduct() != SqlDialect.DatabaseProduct.MYSQL;
+        }
+    }
+
+    /**
+     * Pushes window functions down as a project with OVER expressions, which is how Calcite unparses them.
+     * Only frames bounded by UNBOUNDED or CURRENT ROW are pushed: offset bounds refer to window constants.
+     */
+    static class DrillJdbcWindowRule extends DrillJdbcRuleBase {
+
+        DrillJdbcWindowRule(JdbcConvention out) {
+            super(LogicalWindow.class, Convention.NONE, out, "iDVPDrillJdbcWindowRule");
+        }
+
+        @Override
+        public boolean matches(RelOptRuleCall call) {
+            if (!(out.dialect instanceof JdbcSqlDialect)) {
+                return false;
+            }
+            final JdbcSqlDialect dialect = (JdbcSqlDialect) out.dialect;
+            final LogicalWindow window = call.rel(0);
+            for (Window.Group group : window.groups) {
+                if (!isSimpleBound(group.lowerBound) || !isSimpleBound(group.upperBound)) {
+                    return false;
+                }
+                final boolean ordered = !group.orderKeys.getFieldCollations().isEmpty();
+                for (Window.RexWinAggCall aggCall : group.aggCalls) {
+                    if (aggCall.distinct || !dialect.supportsWindowFunction(unwrap(aggCall.getOperator()), ordered)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public RelNode convert(RelNode rel) {
+            final LogicalWindow window = (LogicalWindow) rel;
+            final RelNode input = window.getInput();
+            final RexBuilder rexBuilder = window.getCluster().getRexBuilder();
+            final int inputCount = input.getRowType().getFieldCount();
+
+            // Константы окна доступны как поля после полей входа, подставляем их значения
+            final RexShuttle constants = new RexShuttle() {
+                @Override
+                public RexNode visitInputRef(RexInputRef inputRef) {
+                    final int index = inputRef.getIndex();
+                    return index < inputCount ? inputRef : window.constants.get(index - inputCount);
+                }
+            };
+
+            final List<RexNode> projects = new ArrayList<>();
+            for (int i = 0; i < inputCount; i++) {
+                projects.add(rexBuilder.makeInputRef(input, i));
+            }
+            for (Window.Group group : window.groups) {
+                final List<RexNode> partitionKeys = new ArrayList<>();
+                for (int key : group.keys) {
+                    partitionKeys.add(rexBuilder.makeInputRef(input, key));
+                }
+                final ImmutableList.Builder<RexFieldCollation> orderKeys = ImmutableList.builder();
+                for (RelFieldCollation collation : group.orderKeys.getFieldCollations()) {
+                    orderKeys.add(new RexFieldCollation(
+                            rexBuilder.makeInputRef(input, collation.getFieldIndex()), getFlags(collation)));
+                }
+                for (Window.RexWinAggCall aggCall : group.aggCalls) {
+                    projects.add(rexBuilder.makeOver(aggCall.getType(),
+                            unwrap(aggCall.getOperator()),
+                            constants.apply(aggCall.getOperands()),
+                            partitionKeys,
+                            orderKeys.build(),
+                            group.lowerBound,
+                            group.upperBound,
+                            group.isRows,
+                            true,
+                            false,
+                            aggCall.distinct));
+                }
+            }
+
+            return new JdbcRules.JdbcProject(window.getCluster(),
+                    window.getTraitSet().replace(out),
+                    convert(input, input.getTraitSet().replace(out).simplify()),
+                    projects,
+                    window.getRowType());
+        }
+
+        private static boolean isSimpleBound(RexWindowBound bound) {
+            return bound == null || bound.isUnbounded() || bound.isCurrentRow();
+        }
+
+        private static SqlAggFunction unwrap(SqlOperator operator) {
+            if (operator instanceof DrillCalciteSqlAggFunctionWrapper
+                    && ((DrillCalciteSqlAggFunctionWrapper) operator).getOperator() instanceof SqlAggFunction) {
+                return (SqlAggFunction) ((DrillCalciteSqlAggFunctionWrapper) operator).getOperator();
+            }
+            return (SqlAggFunction) operator;
+        }
+
+        private static Set<SqlKind> getFlags(RelFieldCollation collation) {
+            final ImmutableSet.Builder<SqlKind> flags = ImmutableSet.builder();
+            if (collation.getDirection().isDescending()) {
+                flags.add(SqlKind.DESCENDING);
+            }
+            if (collation.nullDirection == RelFieldCollation.NullDirection.FIRST) {
+                flags.add(SqlKind.NULLS_FIRST);
+            } else if (collation.nullDirection == RelFieldCollation.NullDirection.LAST) {
+                flags.add(SqlKind.NULLS_LAST);
+            }
+            return flags.build();
+        }
+    }
+
 }
@@ -58,7 +58,8 @@ class DrillJdbcSchema extends AbstractSchema {
             schema = getSchemaPath().get(2);
         }
 
-        inner = new LazyJdbcSchema(plugin.getSource(), plugin.getDialect(), plugin.getConvention(), catalog, schema);
+        inner = new LazyJdbcSchema(plugin.getSource(), plugin.getDialect(), plugin.getConvention(), catalog, schema,
+                plugin.getConfig());
     }
 
     @Override
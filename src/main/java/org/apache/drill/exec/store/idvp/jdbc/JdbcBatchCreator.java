@@ -25,7 +25,7 @@ import org.apache.drill.exec.physical.impl.ScanBatch;
 import org.apache.drill.exec.record.RecordBatch;
 import org.apache.drill.exec.store.RecordReader;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 
 //import org.apache.drill.exec.record.CloseableRecordBatch;
@@ -38,7 +38,16 @@ public class JdbcBatchCreator implements BatchCreator<JdbcSubScan> {
                               List<RecordBatch> children) throws ExecutionSetupException {
         Preconditions.checkArgument(children.isEmpty());
         JdbcStoragePlugin plugin = config.getPlugin();
-        RecordReader reader = new JdbcRecordReader(context, plugin.getSource(), config.getSql(), plugin.getName());
-        return new ScanBatch(config, context, Collections.singletonList(reader));
+        List<RecordReader> readers = new ArrayList<>();
+        boolean postgresCopy = JdbcPgCopyRecordReader.supports(plugin);
+        for (int i = 0; i < config.getQueries().size(); i++) {
+            final String sql = config.getQueries().get(i);
+            final List<JdbcParameter> parameters = config.getParameters(i);
+            // COPY не принимает параметры
+            readers.add(postgresCopy && parameters.isEmpty()
+                    ? new JdbcPgCopyRecordReader(context, plugin, sql, config.getColumns())
+                    : new JdbcRecordReader(context, plugin, sql, parameters, config.getColumns()));
+        }
+        return new ScanBatch(config, context, readers);
     }
 }
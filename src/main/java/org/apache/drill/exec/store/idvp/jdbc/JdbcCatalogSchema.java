@@ -96,7 +96,8 @@ class JdbcCatalogSchema extends AbstractSchema {
                             plugin.getDialect(),
                             plugin.getConvention(),
                             null,
-                            null);
+                            null,
+                            plugin.getConfig());
                 }
             }
         }
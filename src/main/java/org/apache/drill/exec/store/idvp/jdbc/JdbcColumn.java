@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+
+import java.util.List;
+
+/**
+ * Column of a pushed down query as the planner sees it. Lets the reader name the columns as planned
+ * and size the first batch without guessing value widths. Types are always taken from the result set.
+ */
+public class JdbcColumn {
+
+    private final String name;
+    private final int width;
+
+    @JsonCreator
+    public JdbcColumn(
+            @JsonProperty("name") String name,
+            @JsonProperty("width") int width) {
+        this.name = name;
+        this.width = width;
+    }
+
+    /**
+     * Describes the columns of a row type.
+     *
+     * @param averageSizes average value sizes in bytes from the planner metadata, may be null
+     */
+    static List<JdbcColumn> fromRowType(RelDataType rowType, List<Double> averageSizes) {
+        final ImmutableList.Builder<JdbcColumn> columns = ImmutableList.builder();
+        for (RelDataTypeField field : rowType.getFieldList()) {
+            final Double averageSize = averageSizes == null ? null : averageSizes.get(field.getIndex());
+            final int width = averageSize == null || averageSize.isNaN() ? -1 : (int) Math.ceil(averageSize);
+            columns.add(new JdbcColumn(field.getName(), width));
+        }
+        return columns.build();
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Estimated average size of a value in bytes, -1 if unknown.
+     */
+    @JsonProperty
+    public int getWidth() {
+        return width;
+    }
+}
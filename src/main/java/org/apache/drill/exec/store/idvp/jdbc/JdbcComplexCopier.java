@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import io.netty.buffer.DrillBuf;
+import org.apache.drill.exec.ops.OperatorContext;
+import org.apache.drill.exec.store.easy.json.JsonProcessor.ReadState;
+import org.apache.drill.exec.vector.ValueVector;
+import org.apache.drill.exec.vector.complex.fn.JsonReader;
+import org.apache.drill.exec.vector.complex.impl.ComplexWriterImpl;
+import org.apache.drill.exec.vector.complex.impl.VectorContainerWriter;
+import org.apache.drill.exec.vector.complex.writer.BaseWriter.ListWriter;
+import org.apache.drill.exec.vector.complex.writer.BaseWriter.MapWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.sql.Date;
+import java.util.*;
+
+/**
+ * Copies ARRAY, STRUCT and JSON columns into Drill complex vectors: arrays become repeated vectors,
+ * structs and JSON objects become maps.
+ */
+abstract class JdbcComplexCopier extends JdbcRecordReader.Copier<ValueVector.Mutator> {
+
+    private static final ImmutableSet<String> JSON_TYPES = ImmutableSet.of("json", "jsonb");
+
+    // Точность VARDECIMAL значений внутри массивов и структур неизвестна из метаданных
+    private static final int DECIMAL_PRECISION = 38;
+
+    final OperatorContext operatorContext;
+    private final boolean decimalEnabled;
+    // Масштаб decimal элементов массивов по пути элемента, -1 - масштаб неизвестен
+    private final Map<String, Integer> elementScales = new HashMap<>();
+    private final Map<String, List<String>> attributeNames = new HashMap<>();
+    // Масштабы decimal атрибутов структурных типов, -1 - масштаб неизвестен
+    private final Map<String, int[]> attributeScales = new HashMap<>();
+    DrillBuf buffer;
+
+    JdbcComplexCopier(int columnIndex, ResultSet result, OperatorContext operatorContext, boolean decimalEnabled) {
+        super(columnIndex, result, null);
+        this.operatorContext = operatorContext;
+        this.decimalEnabled = decimalEnabled;
+        this.buffer = operatorContext.getManagedBuffer();
+    }
+
+    /**
+     * @return whether the column is read into complex vectors
+     */
+    static boolean isComplex(int jdbcType, String typeName) {
+        return jdbcType == Types.ARRAY
+                || jdbcType == Types.STRUCT
+                || jdbcType == Types.OTHER && typeName != null && JSON_TYPES.contains(typeName.toLowerCase());
+    }
+
+    /**
+     * @param decimalEnabled whether decimal values of arrays and structs are read as VARDECIMAL, otherwise as FLOAT8
+     */
+    static JdbcComplexCopier create(int columnIndex, String name, int jdbcType, ResultSet result,
+                                    VectorContainerWriter writer, OperatorContext operatorContext,
+                                    boolean decimalEnabled) {
+        switch (jdbcType) {
+            case Types.ARRAY:
+                return new ArrayCopier(columnIndex, result, operatorContext, decimalEnabled,
+                        writer.rootAsMap().list(name));
+            case Types.STRUCT:
+                return new StructCopier(columnIndex, result, operatorContext, decimalEnabled,
+                        writer.rootAsMap().map(name));
+            default:
+                return new JsonCopier(columnIndex, result, operatorContext, decimalEnabled,
+                        new ComplexWriterImpl(name, writer.getMapVector()));
+        }
+    }
+
+    /**
+     * Completes the batch of the column, if it is written with its own writer.
+     */
+    void setValueCount(int count) {
+    }
+
+    void allocate() {
+    }
+
+    /**
+     * Writes a value of an array element ({@code list} is set) or of a struct attribute ({@code map} is set).
+     *
+     * @param path  path of the value inside the column, keys cached scales of nested arrays
+     * @param scale scale of a decimal value from metadata, or -1 to write the value with its own scale
+     */
+    void write(ListWriter list, MapWriter map, String name, Object value, String path, int scale)
+            throws SQLException {
+        if (value == null) {
+            return;
+        }
+
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            (list != null ? list.integer() : map.integer(name)).writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            (list != null ? list.bigInt() : map.bigInt(name)).writeBigInt((Long) value);
+        } else if (value instanceof Float) {
+            (list != null ? list.float4() : map.float4(name)).writeFloat4((Float) value);
+        } else if (value instanceof BigDecimal && decimalEnabled) {
+            final BigDecimal decimal = withScale((BigDecimal) value, scale);
+            (list != null ? list.varDecimal(decimal.scale(), DECIMAL_PRECISION)
+                    : map.varDecimal(name, decimal.scale(), DECIMAL_PRECISION)).writeVarDecimal(decimal);
+        } else if (value instanceof Double || value instanceof BigDecimal) {
+            (list != null ? list.float8() : map.float8(name)).writeFloat8(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            (list != null ? list.bit() : map.bit(name)).writeBit((Boolean) value ? 1 : 0);
+        } else if (value instanceof Timestamp) {
+            (list != null ? list.timeStamp() : map.timeStamp(name)).writeTimeStamp(((Timestamp) value).getTime());
+        } else if (value instanceof Date) {
+            (list != null ? list.date() : map.date(name)).writeDate(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            (list != null ? list.time() : map.time(name)).writeTime((int) ((Time) value).getTime());
+        } else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            buffer = buffer.reallocIfNeeded(bytes.length);
+            buffer.setBytes(0, bytes);
+            (list != null ? list.varBinary() : map.varBinary(name)).writeVarBinary(0, bytes.length, buffer);
+        } else if (value instanceof Array) {
+            final ListWriter inner = list != null ? list.list() : map.list(name);
+            writeArray(inner, (Array) value, path);
+        } else if (value instanceof Struct) {
+            final MapWriter inner = list != null ? list.map() : map.map(name);
+            inner.start();
+            writeStruct(inner, (Struct) value, path);
+            inner.end();
+        } else {
+            final byte[] bytes = value.toString().getBytes(Charsets.UTF_8);
+            buffer = buffer.reallocIfNeeded(bytes.length);
+            buffer.setBytes(0, bytes);
+            (list != null ? list.varChar() : map.varChar(name)).writeVarChar(0, bytes.length, buffer);
+        }
+    }
+
+    /**
+     * Writes elements of the array. Repeated vectors can not hold nulls: a null array or struct element is written
+     * as an empty list or map, so positions of the other elements are kept; a null scalar element is an error.
+     */
+    void writeArray(ListWriter list, Array array, String path) throws SQLException {
+        list.startList();
+        try {
+            final Object elements = array.getArray();
+            final int length = java.lang.reflect.Array.getLength(elements);
+            final String elementPath = path + "[]";
+            int scale = -1;
+            if (decimalEnabled && length > 0) {
+                final Integer known = elementScales.get(elementPath);
+                if (known != null) {
+                    scale = known;
+                } else {
+                    scale = elementScale(array);
+                    elementScales.put(elementPath, scale);
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                final Object element = java.lang.reflect.Array.get(elements, i);
+                if (element == null) {
+                    writeNullElement(list, array.getBaseType(), i);
+                } else {
+                    write(list, null, null, element, elementPath, scale);
+                }
+            }
+        } finally {
+            array.free();
+        }
+        list.endList();
+    }
+
+    private void writeNullElement(ListWriter list, int baseType, int position) throws SQLException {
+        switch (baseType) {
+            case Types.ARRAY:
+                final ListWriter inner = list.list();
+                inner.startList();
+                inner.endList();
+                break;
+            case Types.STRUCT:
+                final MapWriter map = list.map();
+                map.start();
+                map.end();
+                break;
+            default:
+                throw new SQLException("Null element " + (position + 1) + " of array column " + columnIndex
+                        + " can't be read: Drill lists can't hold nulls");
+        }
+    }
+
+    void writeStruct(MapWriter map, Struct struct, String path) throws SQLException {
+        final Object[] attributes = struct.getAttributes();
+        final String typeName = struct.getSQLTypeName();
+        final List<String> names = getAttributeNames(typeName, attributes.length);
+        final int[] scales = attributeScales.get(typeName);
+        for (int i = 0; i < attributes.length; i++) {
+            write(null, map, names.get(i), attributes[i], path + "." + names.get(i), scales[i]);
+        }
+    }
+
+    /**
+     * Reads the scale of decimal elements from the result set of the array. Drivers that can't describe
+     * the elements, or describe them without precision (PostgreSQL {@code numeric[]}), give -1.
+     */
+    static int elementScale(Array array) throws SQLException {
+        final int baseType = array.getBaseType();
+        if (baseType != Types.DECIMAL && baseType != Types.NUMERIC) {
+            return -1;
+        }
+        // Второй столбец результата массива - значение элемента
+        try (ResultSet elements = array.getResultSet(1, 1)) {
+            final ResultSetMetaData metaData = elements.getMetaData();
+            return metaData.getPrecision(2) > 0 ? metaData.getScale(2) : -1;
+        } catch (SQLFeatureNotSupportedException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sets the scale of the value rounding half up, or keeps the own scale of the value when {@code scale}
+     * is -1. VARDECIMAL can't hold a negative scale, such values are written with scale 0.
+     */
+    static BigDecimal withScale(BigDecimal value, int scale) {
+        if (scale >= 0) {
+            return value.setScale(scale, RoundingMode.HALF_UP);
+        }
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    /**
+     * Reads attribute names and decimal scales of a structured type from database metadata. Attributes
+     * of unknown types are named by position: f1, f2, ... and written with their own scales.
+     */
+    private List<String> getAttributeNames(String typeName, int count) throws SQLException {
+        List<String> names = attributeNames.get(typeName);
+        if (names == null) {
+            names = new ArrayList<>(count);
+            final List<Integer> scales = new ArrayList<>(count);
+            if (typeName != null) {
+                final int dot = typeName.lastIndexOf('.');
+                final String schema = dot < 0 ? null : typeName.substring(0, dot);
+                final String type = typeName.substring(dot + 1);
+                final DatabaseMetaData metaData = result.getStatement().getConnection().getMetaData();
+                try (ResultSet attributes = metaData.getAttributes(null, schema, type, "%")) {
+                    while (attributes.next()) {
+                        names.add(attributes.getString("ATTR_NAME"));
+                        final int scale = attributes.getInt("DECIMAL_DIGITS");
+                        scales.add(attributes.wasNull() ? -1 : scale);
+                    }
+                } catch (SQLFeatureNotSupportedException e) {
+                    names.clear();
+                }
+            }
+            final int[] scaleArray = new int[count];
+            Arrays.fill(scaleArray, -1);
+            if (names.size() != count) {
+                names.clear();
+                for (int i = 1; i <= count; i++) {
+                    names.add("f" + i);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    scaleArray[i] = scales.get(i);
+                }
+            }
+            attributeNames.put(typeName, names);
+            attributeScales.put(typeName, scaleArray);
+        }
+        return names;
+    }
+
+    private static final class ArrayCopier extends JdbcComplexCopier {
+
+        private final ListWriter writer;
+
+        ArrayCopier(int columnIndex, ResultSet result, OperatorContext operatorContext, boolean decimalEnabled,
+                    ListWriter writer) {
+            super(columnIndex, result, operatorContext, decimalEnabled);
+            this.writer = writer;
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            writer.setPosition(index);
+            final Array array = result.getArray(columnIndex);
+            if (array != null) {
+                writeArray(writer, array, "");
+            } else {
+                // NULL массив записывается пустым
+                writer.startList();
+                writer.endList();
+            }
+        }
+    }
+
+    private static final class StructCopier extends JdbcComplexCopier {
+
+        private final MapWriter writer;
+
+        StructCopier(int columnIndex, ResultSet result, OperatorContext operatorContext, boolean decimalEnabled,
+                     MapWriter writer) {
+            super(columnIndex, result, operatorContext, decimalEnabled);
+            this.writer = writer;
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            final Object value = result.getObject(columnIndex);
+            if (value instanceof Struct) {
+                writer.setPosition(index);
+                writer.start();
+                writeStruct(writer, (Struct) value, "");
+                writer.end();
+            }
+        }
+    }
+
+    /**
+     * Parses JSON documents with the streaming parser of Drill's JSON reader. Text of the value is read
+     * from {@code getBytes}, so no string is created for drivers that return raw UTF-8 bytes.
+     */
+    private static final class JsonCopier extends JdbcComplexCopier {
+
+        private final ComplexWriterImpl writer;
+        private final JsonReader jsonReader;
+
+        JsonCopier(int columnIndex, ResultSet result, OperatorContext operatorContext, boolean decimalEnabled,
+                   ComplexWriterImpl writer) {
+            super(columnIndex, result, operatorContext, decimalEnabled);
+            this.writer = writer;
+            this.jsonReader = new JsonReader.Builder(operatorContext.getManagedBuffer()).build();
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            final byte[] json = result.getBytes(columnIndex);
+            if (json == null) {
+                return;
+            }
+            writer.setPosition(index);
+            final ReadState state;
+            try {
+                jsonReader.setSource(json);
+                state = jsonReader.write(writer);
+            } catch (IOException e) {
+                throw new SQLException("Failed to parse JSON value", e);
+            }
+            // Пустой документ (END_OF_STREAM) читается как NULL
+            if (state == ReadState.JSON_RECORD_PARSE_ERROR || state == ReadState.JSON_RECORD_PARSE_EOF_ERROR) {
+                throw new SQLException("Failed to parse JSON value of column " + columnIndex + ": " + state);
+            }
+        }
+
+        @Override
+        void setValueCount(int count) {
+            writer.setValueCount(count);
+        }
+
+        @Override
+        void allocate() {
+            writer.allocate();
+        }
+    }
+}
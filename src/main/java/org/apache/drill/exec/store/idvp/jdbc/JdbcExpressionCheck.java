@@ -18,6 +18,9 @@
 package org.apache.drill.exec.store.idvp.jdbc;
 
 import org.apache.calcite.rex.*;
+import org.apache.calcite.sql.JdbcFunctionTranslations;
+import org.apache.calcite.sql.JdbcSqlDialect;
+import org.apache.calcite.sql.SqlDialect;
 import org.apache.drill.exec.planner.sql.DrillSqlOperator;
 
 /**
@@ -31,12 +34,32 @@ import org.apache.drill.exec.planner.sql.DrillSqlOperator;
  */
 class JdbcExpressionCheck implements RexVisitor<Boolean> {
 
-    private static final JdbcExpressionCheck INSTANCE = new JdbcExpressionCheck();
+    private static final JdbcExpressionCheck INSTANCE = new JdbcExpressionCheck(null);
+
+    /**
+     * Dialect translating Drill functions, null if Drill functions are not pushed down.
+     */
+    private final JdbcSqlDialect dialect;
+
+    private JdbcExpressionCheck(JdbcSqlDialect dialect) {
+        this.dialect = dialect;
+    }
 
     static boolean isOnlyStandardExpressions(RexNode rex) {
         return rex.accept(INSTANCE);
     }
 
+    /**
+     * Same as {@link #isOnlyStandardExpressions(RexNode)}, but calls of Drill functions the dialect translates
+     * are allowed, see {@link JdbcFunctionTranslations}.
+     */
+    static boolean isOnlyStandardExpressions(RexNode rex, SqlDialect dialect) {
+        if (dialect instanceof JdbcSqlDialect) {
+            return rex.accept(new JdbcExpressionCheck((JdbcSqlDialect) dialect));
+        }
+        return isOnlyStandardExpressions(rex);
+    }
+
     @Override
     public Boolean visitInputRef(RexInputRef paramRexInputRef) {
         return true;
@@ -55,12 +78,18 @@ class JdbcExpressionCheck implements RexVisitor<Boolean> {
     @Override
     public Boolean visitCall(RexCall paramRexCall) {
         if(paramRexCall.getOperator() instanceof DrillSqlOperator){
-            return false;
-        }else{
-            for (RexNode operand : paramRexCall.operands) {
-                if (!operand.accept(this)) {
-                    return false;
-                }
+            if (dialect == null) {
+                return false;
+            }
+            final JdbcFunctionTranslations.Translation translation =
+                    dialect.getFunctionTranslation(paramRexCall.getOperator().getName());
+            if (translation == null || !translation.supports(paramRexCall)) {
+                return false;
+            }
+        }
+        for (RexNode operand : paramRexCall.operands) {
+            if (!operand.accept(this)) {
+                return false;
             }
         }
         return true;
@@ -110,7 +139,8 @@ class JdbcExpressionCheck implements RexVisitor<Boolean> {
 
     @Override
     public Boolean visitSubQuery(RexSubQuery subQuery) {
-        return null;
+        // Calcite не умеет превращать RexSubQuery в SQL, подзапросы переносятся после декорреляции, см. JdbcSemiJoinRule
+        return false;
     }
 
     @Override
@@ -31,46 +31,84 @@ import org.apache.drill.exec.physical.base.SubScan;
 import org.apache.drill.exec.proto.CoordinationProtos.DrillbitEndpoint;
 import org.apache.drill.exec.store.StoragePluginRegistry;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @JsonTypeName("jdbc-idvp-scan")
 public class JdbcGroupScan extends AbstractGroupScan {
 
     private final String sql;
+    private final List<JdbcParameter> parameters;
+    private final List<String> splits;
+    private final List<List<JdbcParameter>> splitParameters;
+    private final List<JdbcColumn> columns;
     private final JdbcStoragePlugin plugin;
     private final double rows;
 
+    private int width = 1;
+
     @JsonCreator
     public JdbcGroupScan(
             @JsonProperty("sql") String sql,
+            @JsonProperty("parameters") List<JdbcParameter> parameters,
+            @JsonProperty("splits") List<String> splits,
+            @JsonProperty("splitParameters") List<List<JdbcParameter>> splitParameters,
+            @JsonProperty("columns") List<JdbcColumn> columns,
             @JsonProperty("config") StoragePluginConfig config,
             @JsonProperty("rows") double rows,
             @JacksonInject StoragePluginRegistry plugins) throws ExecutionSetupException {
         super("");
         this.sql = sql;
+        this.parameters = parameters == null ? Collections.emptyList() : parameters;
+        this.splits = splits == null ? Collections.emptyList() : splits;
+        this.splitParameters = splitParameters == null ? Collections.emptyList() : splitParameters;
+        this.columns = columns;
         this.plugin = (JdbcStoragePlugin) plugins.getPlugin(config);
         this.rows = rows;
     }
 
-    JdbcGroupScan(String sql, JdbcStoragePlugin plugin, double rows) {
+    JdbcGroupScan(String sql, List<JdbcParameter> parameters, List<String> splits, List<List<JdbcParameter>> splitParameters,
+                  List<JdbcColumn> columns, JdbcStoragePlugin plugin, double rows) {
         super("");
         this.sql = sql;
+        this.parameters = parameters;
+        this.splits = splits;
+        this.splitParameters = splitParameters;
+        this.columns = columns;
         this.plugin = plugin;
         this.rows = rows;
     }
 
+    private JdbcGroupScan(JdbcGroupScan that) {
+        this(that.sql, that.parameters, that.splits, that.splitParameters, that.columns, that.plugin, that.rows);
+        this.width = that.width;
+    }
+
     @Override
     public void applyAssignments(List<DrillbitEndpoint> endpoints) {
+        width = Math.max(endpoints.size(), 1);
     }
 
     @Override
     public SubScan getSpecificScan(int minorFragmentId) {
-        return new JdbcSubScan(sql, plugin);
+        if (splits.isEmpty()) {
+            return new JdbcSubScan(Collections.singletonList(sql), Collections.singletonList(parameters), columns, plugin);
+        }
+
+        // Splits are dealt round-robin, so the fragment count may be less than the split count
+        List<String> queries = new ArrayList<>();
+        List<List<JdbcParameter>> queryParameters = new ArrayList<>();
+        for (int i = minorFragmentId; i < splits.size(); i += width) {
+            queries.add(splits.get(i));
+            queryParameters.add(splitParameters.isEmpty() ? Collections.emptyList() : splitParameters.get(i));
+        }
+        return new JdbcSubScan(queries, queryParameters, columns, plugin);
     }
 
     @Override
     public int getMaxParallelizationWidth() {
-        return 1;
+        return Math.max(splits.size(), 1);
     }
 
     @Override
@@ -87,9 +125,35 @@ public class JdbcGroupScan extends AbstractGroupScan {
         return sql;
     }
 
+    /**
+     * Values of the dynamic parameters of the query.
+     */
+    @JsonProperty
+    public List<JdbcParameter> getParameters() {
+        return parameters;
+    }
+
+    @JsonProperty
+    public List<String> getSplits() {
+        return splits;
+    }
+
+    @JsonProperty
+    public List<List<JdbcParameter>> getSplitParameters() {
+        return splitParameters;
+    }
+
+    /**
+     * Names and width hints of the query columns as planned, null if unknown.
+     */
+    @JsonProperty
+    public List<JdbcColumn> getColumns() {
+        return columns;
+    }
+
     @Override
     public String getDigest() {
-        return sql + String.valueOf(plugin.getConfig());
+        return sql + parameters + String.valueOf(plugin.getConfig());
     }
 
     @JsonProperty
@@ -104,7 +168,7 @@ public class JdbcGroupScan extends AbstractGroupScan {
 
     @Override
     public PhysicalOperator getNewWithChildren(List<PhysicalOperator> children) {
-        return new JdbcGroupScan(sql, plugin, rows);
+        return new JdbcGroupScan(this);
     }
 
 
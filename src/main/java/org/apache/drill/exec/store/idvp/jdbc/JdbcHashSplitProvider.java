@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.JdbcSqlDialect;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits a scan by hash of one or more columns: split {@code i} reads rows with
+ * {@code SPLIT_BUCKET(n, columns) = i}. Works for any column types, but each split reads the whole table
+ * unless the database can use the hash expression for access.
+ */
+class JdbcHashSplitProvider implements JdbcSplitProvider {
+
+    private final JdbcStoragePlugin plugin;
+    private final RexBuilder rexBuilder;
+
+    JdbcHashSplitProvider(JdbcStoragePlugin plugin, RexBuilder rexBuilder) {
+        this.plugin = plugin;
+        this.rexBuilder = rexBuilder;
+    }
+
+    static boolean supports(SqlDialect dialect) {
+        return dialect instanceof JdbcSqlDialect && ((JdbcSqlDialect) dialect).supportsSplitBucket();
+    }
+
+    @Override
+    public JdbcScanSplits split(TableScan scan, List<RelDataTypeField> columns, int splitCount) throws SQLException {
+        final List<RexNode> operands = new ArrayList<>(columns.size() + 1);
+        operands.add(rexBuilder.makeExactLiteral(BigDecimal.valueOf(splitCount)));
+        for (RelDataTypeField column : columns) {
+            operands.add(rexBuilder.makeInputRef(column.getType(), column.getIndex()));
+        }
+
+        final RexNode bucket = rexBuilder.makeCall(
+                rexBuilder.getTypeFactory().createSqlType(SqlTypeName.BIGINT),
+                JdbcSqlDialect.SPLIT_BUCKET,
+                operands);
+
+        final List<RexNode> conditions = new ArrayList<>(splitCount);
+        for (int i = 0; i < splitCount; i++) {
+            conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                    bucket,
+                    rexBuilder.makeExactLiteral(BigDecimal.valueOf(i))));
+        }
+
+        return new JdbcScanSplits(conditions, getRowCount(scan));
+    }
+
+    private long getRowCount(TableScan scan) throws SQLException {
+        final String cacheKey = Joiner.on('.').join(scan.getTable().getQualifiedName()) + "#*";
+        try {
+            return plugin.getSplitBoundariesCache().get(cacheKey, () -> countRows(scan)).rowCount;
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), SQLException.class);
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private JdbcRangeSplitProvider.Boundaries countRows(TableScan scan) throws SQLException {
+        final String sql = "SELECT COUNT(*) FROM " + JdbcScanSplitter.getTableName(scan, plugin.getDialect());
+        try (Connection connection = plugin.getSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            final long rowCount = resultSet.next() ? resultSet.getLong(1) : -1;
+            return new JdbcRangeSplitProvider.Boundaries(Collections.emptyList(), rowCount);
+        }
+    }
+}
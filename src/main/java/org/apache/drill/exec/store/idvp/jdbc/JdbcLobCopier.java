@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import io.netty.buffer.DrillBuf;
+import org.apache.drill.exec.ops.OperatorContext;
+import org.apache.drill.exec.vector.NullableVarBinaryVector;
+import org.apache.drill.exec.vector.NullableVarCharVector;
+import org.apache.drill.exec.vector.ValueVector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Streams BLOB and CLOB values in chunks into a reusable direct buffer and copies them into the vector from
+ * there, so a value is never materialized on the heap. Values larger than the size limit are truncated or
+ * fail the query.
+ */
+abstract class JdbcLobCopier<T extends ValueVector.Mutator> extends JdbcRecordReader.Copier<T> {
+
+    static final ImmutableSet<Integer> LOB_TYPES = ImmutableSet.of(Types.BLOB, Types.CLOB, Types.NCLOB);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    final int maxSize;
+    final boolean truncate;
+    DrillBuf buffer;
+    private long batchBytes;
+
+    JdbcLobCopier(int columnIndex, ResultSet result, T mutator, OperatorContext operatorContext, JdbcStorageConfig config) {
+        super(columnIndex, result, mutator);
+        this.maxSize = config.getMaxLobSize();
+        this.truncate = config.isTruncateLobs();
+        this.buffer = operatorContext.getManagedBuffer();
+    }
+
+    static JdbcLobCopier<?> create(int columnIndex, ResultSet result, ValueVector v,
+                                   OperatorContext operatorContext, JdbcStorageConfig config) {
+        if (v instanceof NullableVarBinaryVector) {
+            return new BlobCopier(columnIndex, result, (NullableVarBinaryVector.Mutator) v.getMutator(), operatorContext, config);
+        } else if (v instanceof NullableVarCharVector) {
+            return new ClobCopier(columnIndex, result, (NullableVarCharVector.Mutator) v.getMutator(), operatorContext, config);
+        }
+        throw new IllegalArgumentException("Unknown how to handle vector.");
+    }
+
+    /**
+     * Initial estimate of value size for batch sizing.
+     */
+    static int estimateWidth(JdbcStorageConfig config) {
+        return Math.min(config.getMaxLobSize(), CHUNK_SIZE);
+    }
+
+    /**
+     * @return bytes copied since the last call
+     */
+    long takeBatchBytes() {
+        final long bytes = batchBytes;
+        batchBytes = 0;
+        return bytes;
+    }
+
+    /**
+     * Appends bytes to the value in the buffer.
+     *
+     * @return new length of the value, or -1 if the value is truncated at the size limit
+     */
+    int append(int length, byte[] bytes, int count) throws SQLException {
+        int size = count;
+        boolean truncated = false;
+        if (length + size > maxSize) {
+            if (!truncate) {
+                throw new SQLException(String.format(
+                        "Value of LOB column %d is larger than %d bytes. Increase maxLobSize or enable truncateLobs.",
+                        columnIndex, maxSize));
+            }
+            size = maxSize - length;
+            truncated = true;
+        }
+        buffer = buffer.reallocIfNeeded(length + size);
+        buffer.setBytes(length, bytes, 0, size);
+        batchBytes += size;
+        return truncated ? -1 : length + size;
+    }
+
+    private static final class BlobCopier extends JdbcLobCopier<NullableVarBinaryVector.Mutator> {
+
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+
+        BlobCopier(int columnIndex, ResultSet result, NullableVarBinaryVector.Mutator mutator,
+                   OperatorContext operatorContext, JdbcStorageConfig config) {
+            super(columnIndex, result, mutator, operatorContext, config);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            try (InputStream in = result.getBinaryStream(columnIndex)) {
+                if (in == null) {
+                    return;
+                }
+                int length = 0;
+                int read;
+                while ((read = in.read(chunk)) >= 0) {
+                    final int appended = append(length, chunk, read);
+                    if (appended < 0) {
+                        length = maxSize;
+                        break;
+                    }
+                    length = appended;
+                }
+                mutator.setSafe(index, 0, length, buffer);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read BLOB value", e);
+            }
+        }
+    }
+
+    private static final class ClobCopier extends JdbcLobCopier<NullableVarCharVector.Mutator> {
+
+        private final CharsetEncoder encoder = Charsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE * 3);
+
+        ClobCopier(int columnIndex, ResultSet result, NullableVarCharVector.Mutator mutator,
+                   OperatorContext operatorContext, JdbcStorageConfig config) {
+            super(columnIndex, result, mutator, operatorContext, config);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            try (Reader reader = result.getCharacterStream(columnIndex)) {
+                if (reader == null) {
+                    return;
+                }
+                encoder.reset();
+                chars.clear();
+                int length = 0;
+                boolean end = false;
+                while (!end) {
+                    end = reader.read(chars) < 0;
+                    chars.flip();
+                    bytes.clear();
+                    encoder.encode(chars, bytes, end);
+                    if (end) {
+                        encoder.flush(bytes);
+                    }
+                    chars.compact();
+
+                    final int appended = append(length, bytes.array(), bytes.position());
+                    if (appended < 0) {
+                        length = utf8Boundary(maxSize);
+                        break;
+                    }
+                    length = appended;
+                }
+                mutator.setSafe(index, 0, length, buffer);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read CLOB value", e);
+            }
+        }
+
+        /**
+         * Не разрезаем многобайтовый символ UTF-8: отбрасываем последний символ, если он не поместился целиком.
+         */
+        private int utf8Boundary(int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int start = length - 1;
+            while (start > 0 && (buffer.getByte(start) & 0xC0) == 0x80) {
+                start--;
+            }
+            final int lead = buffer.getByte(start) & 0xFF;
+            final int width = lead < 0x80 ? 1 : lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+            return start + width > length ? start : length;
+        }
+    }
+}
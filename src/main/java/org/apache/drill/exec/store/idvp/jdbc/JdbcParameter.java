@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.calcite.sql.*;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Value of a dynamic parameter of a pushed down query. Values are kept as text, so the plan stays readable.
+ */
+public class JdbcParameter {
+
+    public enum Kind {
+        LONG,
+        DECIMAL,
+        DOUBLE,
+        /**
+         * Not produced from literals any more, kept for plans serialized before.
+         */
+        STRING,
+        DATE,
+        TIMESTAMP
+    }
+
+    private final Kind kind;
+    private final String value;
+
+    @JsonCreator
+    public JdbcParameter(
+            @JsonProperty("kind") Kind kind,
+            @JsonProperty("value") String value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    /**
+     * @return parameter of the literal value, or null if the literal is left in the query text
+     */
+    static JdbcParameter fromLiteral(SqlLiteral literal) {
+        if (literal instanceof SqlNumericLiteral) {
+            final BigDecimal number = (BigDecimal) literal.getValue();
+            if (!((SqlNumericLiteral) literal).isExact()) {
+                return new JdbcParameter(Kind.DOUBLE, number.toString());
+            }
+            if (number.scale() <= 0) {
+                try {
+                    // Целые числа передаются как BIGINT, иначе PostgreSQL сравнивает колонку как numeric без индекса
+                    return new JdbcParameter(Kind.LONG, Long.toString(number.longValueExact()));
+                } catch (ArithmeticException e) {
+                    // doesn't fit in long
+                }
+            }
+            return new JdbcParameter(Kind.DECIMAL, number.toPlainString());
+        } else if (literal instanceof SqlCharStringLiteral) {
+            // Строковые литералы имеют тип CHAR: переданные параметром (VARCHAR), они сравниваются с CHAR колонками
+            // Oracle без дополнения пробелами
+            return null;
+        } else if (literal instanceof SqlDateLiteral) {
+            return new JdbcParameter(Kind.DATE, ((SqlDateLiteral) literal).toFormattedString());
+        } else if (literal instanceof SqlTimestampLiteral) {
+            return new JdbcParameter(Kind.TIMESTAMP, ((SqlTimestampLiteral) literal).toFormattedString());
+        }
+        return null;
+    }
+
+    /**
+     * Sets parameters of the statement, indexes start from 1.
+     */
+    static void bind(PreparedStatement statement, List<JdbcParameter> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            parameters.get(i).bind(statement, i + 1);
+        }
+    }
+
+    private void bind(PreparedStatement statement, int index) throws SQLException {
+        switch (kind) {
+            case LONG:
+                statement.setLong(index, Long.parseLong(value));
+                break;
+            case DECIMAL:
+                statement.setBigDecimal(index, new BigDecimal(value));
+                break;
+            case DOUBLE:
+                statement.setDouble(index, Double.parseDouble(value));
+                break;
+            case STRING:
+                statement.setString(index, value);
+                break;
+            case DATE:
+                statement.setDate(index, Date.valueOf(value));
+                break;
+            case TIMESTAMP:
+                statement.setTimestamp(index, Timestamp.valueOf(value));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected parameter kind " + kind);
+        }
+    }
+
+    @JsonProperty
+    public Kind getKind() {
+        return kind;
+    }
+
+    @JsonProperty
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        JdbcParameter that = (JdbcParameter) o;
+        return kind == that.kind && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, value);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.STRING ? "'" + value + "'" : value;
+    }
+}
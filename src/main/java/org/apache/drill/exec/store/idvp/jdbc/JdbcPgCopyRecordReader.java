@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.drill.common.AutoCloseables;
+import org.apache.drill.common.exceptions.UserException;
+import org.apache.drill.common.types.TypeProtos.MajorType;
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.drill.common.types.Types;
+import org.apache.drill.exec.exception.SchemaChangeException;
+import org.apache.drill.exec.expr.TypeHelper;
+import org.apache.drill.exec.ops.FragmentContext;
+import org.apache.drill.exec.ops.OperatorContext;
+import org.apache.drill.exec.physical.impl.OutputMutator;
+import org.apache.drill.exec.record.MaterializedField;
+import org.apache.drill.exec.store.AbstractRecordReader;
+import org.apache.drill.exec.vector.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Reads a PostgreSQL query with {@code COPY (query) TO STDOUT (FORMAT binary)} and decodes the binary tuples
+ * directly into value vectors, without a {@link java.sql.ResultSet}.
+ * If the query returns a column of a type not decoded here, the query is read by {@link JdbcRecordReader}.
+ * The PostgreSQL driver is optional, it is used only through {@link JdbcPgCopyStream}.
+ */
+class JdbcPgCopyRecordReader extends AbstractRecordReader {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcPgCopyRecordReader.class);
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    // Binary COPY хранит даты и время от 2000-01-01
+    private static final long EPOCH_OFFSET_DAYS = 10957;
+    private static final long EPOCH_OFFSET_MILLIS = EPOCH_OFFSET_DAYS * 86400000L;
+
+    // Длина значения в кортеже COPY
+    private static final int LENGTH_BYTES = 4;
+
+    private static final boolean DRIVER_AVAILABLE = isDriverAvailable();
+
+    private enum Kind {
+        INT2(MinorType.INT),
+        INT2_NARROW(MinorType.SMALLINT),
+        INT4(MinorType.INT),
+        INT8(MinorType.BIGINT),
+        FLOAT4(MinorType.FLOAT4),
+        FLOAT8(MinorType.FLOAT8),
+        BOOL(MinorType.BIT),
+        TEXT(MinorType.VARCHAR),
+        TEXT_TRIMMED(MinorType.VARCHAR),
+        BYTEA(MinorType.VARBINARY),
+        DATE(MinorType.DATE),
+        TIME(MinorType.TIME),
+        TIMESTAMP(MinorType.TIMESTAMP);
+
+        private final MinorType minorType;
+
+        Kind(MinorType minorType) {
+            this.minorType = minorType;
+        }
+    }
+
+    private static final ImmutableMap<String, Kind> KINDS = ImmutableMap.<String, Kind>builder()
+            .put("int2", Kind.INT2)
+            .put("int4", Kind.INT4)
+            .put("int8", Kind.INT8)
+            .put("float4", Kind.FLOAT4)
+            .put("float8", Kind.FLOAT8)
+            .put("bool", Kind.BOOL)
+            .put("text", Kind.TEXT)
+            .put("varchar", Kind.TEXT)
+            .put("bpchar", Kind.TEXT)
+            .put("name", Kind.TEXT)
+            .put("bytea", Kind.BYTEA)
+            .put("date", Kind.DATE)
+            .put("time", Kind.TIME)
+            .put("timestamp", Kind.TIMESTAMP)
+            .put("timestamptz", Kind.TIMESTAMP)
+            .build();
+
+    // Типы режима useNarrowTypes, согласованы с JdbcRecordReader
+    private static final ImmutableMap<String, Kind> NARROW_KINDS = ImmutableMap.<String, Kind>builder()
+            .put("int2", Kind.INT2_NARROW)
+            .put("bpchar", Kind.TEXT_TRIMMED)
+            .build();
+
+    private final FragmentContext context;
+    private final JdbcStoragePlugin plugin;
+    private final String sql;
+    private final List<JdbcColumn> plannedColumns;
+
+    private JdbcRecordReader fallback;
+    private Connection connection;
+    private final int targetBatchSize;
+    private InputStream copyStream;
+    private DataInputStream in;
+    private Kind[] kinds;
+    private List<ValueVector> vectors;
+    private byte[] scratch = new byte[256];
+    private boolean finished;
+
+    JdbcPgCopyRecordReader(FragmentContext context, JdbcStoragePlugin plugin, String sql, List<JdbcColumn> plannedColumns) {
+        this.context = context;
+        this.plugin = plugin;
+        this.sql = sql;
+        this.plannedColumns = plannedColumns;
+        this.targetBatchSize = plugin.getConfig().getTargetBatchSize();
+    }
+
+    @SuppressWarnings("deprecation")
+    static boolean supports(JdbcStoragePlugin plugin) {
+        return DRIVER_AVAILABLE
+                && plugin.getConfig().isUsePostgresCopy()
+                && plugin.getDialect().getDatabaseProduct() == org.apache.calcite.sql.SqlDialect.DatabaseProduct.POSTGRESQL;
+    }
+
+    private static boolean isDriverAvailable() {
+        try {
+            Class.forName("org.postgresql.PGConnection", false, JdbcPgCopyRecordReader.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            logger.debug("PostgreSQL driver is not available, binary COPY is not used");
+            return false;
+        }
+    }
+
+    @Override
+    public void setup(OperatorContext operatorContext, OutputMutator output) {
+        try {
+            connection = plugin.getSource().getConnection();
+
+            final List<String> names = new ArrayList<>();
+            final List<Kind> columnKinds = new ArrayList<>();
+            boolean supported = true;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                final ResultSetMetaData meta = statement.getMetaData();
+                final Set<String> columnNames = new HashSet<>();
+                for (int i = 1; meta != null && supported && i <= meta.getColumnCount(); i++) {
+                    final String typeName = meta.getColumnTypeName(i);
+                    Kind kind = plugin.getConfig().isUseNarrowTypes() ? NARROW_KINDS.get(typeName) : null;
+                    if (kind == null) {
+                        kind = KINDS.get(typeName);
+                    }
+                    if (kind == null) {
+                        logger.debug("Column type {} is not supported by binary COPY, query is read with JDBC",
+                                meta.getColumnTypeName(i));
+                        supported = false;
+                        continue;
+                    }
+
+                    String name = meta.getColumnLabel(i);
+                    final String baseName = name;
+                    int nameIndex = 0;
+                    while (columnNames.contains(name)) {
+                        name = baseName + nameIndex++;
+                    }
+                    columnNames.add(name);
+                    names.add(name);
+                    columnKinds.add(kind);
+                }
+                supported &= meta != null;
+            }
+
+            if (!supported) {
+                connection.close();
+                connection = null;
+                fallback = new JdbcRecordReader(context, plugin, sql, Collections.emptyList(), plannedColumns);
+                fallback.setup(operatorContext, output);
+                return;
+            }
+
+            kinds = columnKinds.toArray(new Kind[0]);
+            vectors = new ArrayList<>(kinds.length);
+            for (int i = 0; i < kinds.length; i++) {
+                final MajorType type = Types.optional(kinds[i].minorType);
+                final MaterializedField field = MaterializedField.create(names.get(i), type);
+                final Class<? extends ValueVector> clazz = TypeHelper.getValueVectorClass(type.getMinorType(), type.getMode());
+                vectors.add(output.addField(field, clazz));
+            }
+
+            copyStream = JdbcPgCopyStream.open(connection, sql);
+            in = new DataInputStream(new BufferedInputStream(copyStream, 65536));
+            readHeader();
+
+        } catch (SQLException | SchemaChangeException | IOException e) {
+            throw UserException.dataReadError(e)
+                    .message("The JDBC storage plugin failed while trying setup the SQL query. %s", e.getMessage())
+                    .addContext("sql", sql)
+                    .addContext("plugin", plugin.getName())
+                    .build(logger);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        final byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Unexpected binary COPY signature");
+        }
+        in.readInt(); // flags
+        final int extensionLength = in.readInt();
+        in.skipBytes(extensionLength);
+    }
+
+    @Override
+    public void allocate(Map<String, ValueVector> vectorMap) {
+        if (fallback != null) {
+            fallback.allocate(vectorMap);
+        } else {
+            super.allocate(vectorMap);
+        }
+    }
+
+    @Override
+    public int next() {
+        if (fallback != null) {
+            return fallback.next();
+        }
+
+        int counter = 0;
+        long bytes = 0;
+        try {
+            // Батч ограничен так же, как в JdbcRecordReader: по числу строк и по объёму значений
+            while (!finished && counter < JdbcRecordReader.MAX_BATCH_ROWS && bytes < targetBatchSize) {
+                final short fieldCount = in.readShort();
+                if (fieldCount == -1) {
+                    finished = true;
+                    break;
+                }
+                if (fieldCount != kinds.length) {
+                    throw new IOException("Unexpected field count " + fieldCount + " in binary COPY tuple");
+                }
+                for (int i = 0; i < kinds.length; i++) {
+                    bytes += LENGTH_BYTES + Math.max(readValue(i, counter), 0);
+                }
+                counter++;
+            }
+        } catch (IOException e) {
+            throw UserException
+                    .dataReadError(e)
+                    .message("Failure while attempting to read from database.")
+                    .addContext("sql", sql)
+                    .addContext("plugin", plugin.getName())
+                    .build(logger);
+        }
+
+        for (ValueVector vv : vectors) {
+            vv.getMutator().setValueCount(counter);
+        }
+
+        return counter;
+    }
+
+    /**
+     * @return length of the value, -1 for null
+     */
+    private int readValue(int column, int index) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return length;
+        }
+
+        final ValueVector.Mutator mutator = vectors.get(column).getMutator();
+        switch (kinds[column]) {
+            case INT2:
+                ((NullableIntVector.Mutator) mutator).setSafe(index, in.readShort());
+                break;
+            case INT2_NARROW:
+                ((NullableSmallIntVector.Mutator) mutator).setSafe(index, in.readShort());
+                break;
+            case INT4:
+                ((NullableIntVector.Mutator) mutator).setSafe(index, in.readInt());
+                break;
+            case INT8:
+                ((NullableBigIntVector.Mutator) mutator).setSafe(index, in.readLong());
+                break;
+            case FLOAT4:
+                ((NullableFloat4Vector.Mutator) mutator).setSafe(index, in.readFloat());
+                break;
+            case FLOAT8:
+                ((NullableFloat8Vector.Mutator) mutator).setSafe(index, in.readDouble());
+                break;
+            case BOOL:
+                ((NullableBitVector.Mutator) mutator).setSafe(index, in.readByte() != 0 ? 1 : 0);
+                break;
+            case TEXT:
+                readBytes(length);
+                ((NullableVarCharVector.Mutator) mutator).setSafe(index, scratch, 0, length);
+                break;
+            case TEXT_TRIMMED:
+                readBytes(length);
+                int trimmed = length;
+                while (trimmed > 0 && scratch[trimmed - 1] == ' ') {
+                    trimmed--;
+                }
+                ((NullableVarCharVector.Mutator) mutator).setSafe(index, scratch, 0, trimmed);
+                break;
+            case BYTEA:
+                readBytes(length);
+                ((NullableVarBinaryVector.Mutator) mutator).setSafe(index, scratch, 0, length);
+                break;
+            case DATE:
+                ((NullableDateVector.Mutator) mutator).setSafe(index, (in.readInt() + EPOCH_OFFSET_DAYS) * 86400000L);
+                break;
+            case TIME:
+                ((NullableTimeVector.Mutator) mutator).setSafe(index, (int) (in.readLong() / 1000));
+                break;
+            case TIMESTAMP:
+                ((NullableTimeStampVector.Mutator) mutator).setSafe(index,
+                        Math.floorDiv(in.readLong(), 1000L) + EPOCH_OFFSET_MILLIS);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected column kind " + kinds[column]);
+        }
+        return length;
+    }
+
+    private void readBytes(int length) throws IOException {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        in.readFully(scratch, 0, length);
+    }
+
+    @Override
+    public void close() throws Exception {
+        AutoCloseables.close(fallback, copyStream, connection);
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * All references to the PostgreSQL driver used by {@link JdbcPgCopyRecordReader}. Drill does not ship the driver,
+ * so this class is loaded only after {@link JdbcPgCopyRecordReader#supports(JdbcStoragePlugin)} has found it.
+ */
+final class JdbcPgCopyStream {
+
+    private JdbcPgCopyStream() {
+    }
+
+    /**
+     * Starts {@code COPY (query) TO STDOUT (FORMAT binary)}. Closing the stream cancels unfinished copy.
+     */
+    static InputStream open(Connection connection, String sql) throws SQLException {
+        return new PGCopyInputStream(connection.unwrap(PGConnection.class),
+                "COPY (" + sql + ") TO STDOUT (FORMAT binary)");
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import org.apache.calcite.adapter.jdbc.LazyJdbcSchema;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.JdbcSqlDialect;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a full scan of a table by physical location of the rows: block ranges of {@code ctid} on PostgreSQL,
+ * {@code ROWID} ranges of table extents on Oracle, {@code _ROWID_} ranges on H2.
+ * Each split reads only its blocks, no index is needed. Block layout is read at planning time, so the splits are
+ * adjacent ranges with unbounded first and last range: blocks allocated after planning are read too.
+ * PostgreSQL tables are split only since version 14: before it ctid conditions do not narrow the scan.
+ * Oracle extents are read from {@code dba_extents}; without access to it tables are not split.
+ */
+class JdbcPhysicalSplitProvider implements JdbcSplitProvider {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcPhysicalSplitProvider.class);
+
+    private final JdbcStoragePlugin plugin;
+    private final RexBuilder rexBuilder;
+
+    JdbcPhysicalSplitProvider(JdbcStoragePlugin plugin, RexBuilder rexBuilder) {
+        this.plugin = plugin;
+        this.rexBuilder = rexBuilder;
+    }
+
+    static boolean supports(SqlDialect dialect) {
+        return dialect instanceof JdbcSqlDialect && ((JdbcSqlDialect) dialect).supportsRowLocatorRange();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public JdbcScanSplits split(TableScan scan, List<RelDataTypeField> columns, int splitCount) throws SQLException {
+        switch (plugin.getDialect().getDatabaseProduct()) {
+            case POSTGRESQL:
+                return splitPostgres(scan, splitCount);
+            case ORACLE:
+                return splitOracle(scan, splitCount);
+            case H2:
+                return splitH2(scan, splitCount);
+            default:
+                return JdbcScanSplits.NONE;
+        }
+    }
+
+    private JdbcScanSplits splitPostgres(TableScan scan, int splitCount) throws SQLException {
+        final String sql = "SELECT relpages, reltuples FROM pg_class WHERE oid = CAST(? AS regclass)";
+        try (Connection connection = plugin.getSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, JdbcScanSplitter.getTableName(scan, plugin.getDialect()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return JdbcScanSplits.NONE;
+                }
+                return blockRanges(0, resultSet.getLong(1), splitCount, resultSet.getLong(2));
+            }
+        }
+    }
+
+    private JdbcScanSplits splitH2(TableScan scan, int splitCount) throws SQLException {
+        final String sql = "SELECT MIN(_ROWID_), MAX(_ROWID_), COUNT(*) FROM "
+                + JdbcScanSplitter.getTableName(scan, plugin.getDialect());
+        try (Connection connection = plugin.getSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            if (!resultSet.next()) {
+                return JdbcScanSplits.NONE;
+            }
+            return blockRanges(resultSet.getLong(1), resultSet.getLong(2) + 1, splitCount, resultSet.getLong(3));
+        }
+    }
+
+    /**
+     * Divides [from, to) into ranges of equal size. The first and the last range are unbounded, so rows outside
+     * of the range known at planning time are read too.
+     */
+    JdbcScanSplits blockRanges(long from, long to, int splitCount, long rowCount) {
+        final long size = to - from;
+        final List<RexNode> conditions = new ArrayList<>(splitCount);
+        long lower = -1;
+        for (int i = 1; i <= splitCount; i++) {
+            final long upper = i == splitCount ? -1 : from + size * i / splitCount;
+            if (upper >= 0 && upper <= Math.max(lower, from)) {
+                continue;
+            }
+            conditions.add(locatorRange(lower, upper));
+            lower = upper;
+        }
+        return new JdbcScanSplits(conditions, rowCount);
+    }
+
+    private JdbcScanSplits splitOracle(TableScan scan, int splitCount) throws SQLException {
+        final SqlIdentifier tableName = LazyJdbcSchema.getRemoteTableName(scan.getTable());
+        final String table = tableName.names.get(tableName.names.size() - 1);
+        final String owner = tableName.names.size() > 1 ? tableName.names.get(tableName.names.size() - 2) : null;
+
+        final String extentsSql = "SELECT o.data_object_id, e.relative_fno, e.block_id, e.blocks"
+                + " FROM dba_extents e JOIN all_objects o ON o.owner = e.owner AND o.object_name = e.segment_name"
+                + " AND (o.subobject_name = e.partition_name OR (o.subobject_name IS NULL AND e.partition_name IS NULL))"
+                + " WHERE e.owner = NVL(?, USER) AND e.segment_name = ? ORDER BY o.data_object_id, e.relative_fno, e.block_id";
+        final String rowsSql = "SELECT num_rows FROM all_tables WHERE owner = NVL(?, USER) AND table_name = ?";
+
+        final List<long[]> extents = new ArrayList<>();
+        long totalBlocks = 0;
+        long rowCount = -1;
+        try (Connection connection = plugin.getSource().getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(extentsSql)) {
+                statement.setString(1, owner);
+                statement.setString(2, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        final long blocks = resultSet.getLong(4);
+                        extents.add(new long[]{resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3), blocks});
+                        totalBlocks += blocks;
+                    }
+                }
+            } catch (SQLException e) {
+                // dba_extents доступна только с привилегиями администратора, в user_extents нет номеров блоков
+                logger.debug("Extents of {} are not available. Table will be read without splitting", table, e);
+                return JdbcScanSplits.NONE;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(rowsSql)) {
+                statement.setString(1, owner);
+                statement.setString(2, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        rowCount = resultSet.getLong(1);
+                    }
+                }
+            }
+        }
+
+        return new JdbcScanSplits(oracleRanges(extents, totalBlocks, splitCount), rowCount);
+    }
+
+    /**
+     * Deals extents to splits in ROWID order, each split gets about the same number of blocks. Each split is a single
+     * ROWID range from the first block of its first extent to the first block of the next split, so a table with
+     * many extents does not produce long conditions, and rows outside of the known extents are read too.
+     *
+     * @param extents data object id, relative file number, first block and block count of each extent, in ROWID order
+     */
+    List<RexNode> oracleRanges(List<long[]> extents, long totalBlocks, int splitCount) {
+        final long blocksPerSplit = Math.max(totalBlocks / splitCount, 1);
+        final List<long[]> starts = new ArrayList<>(splitCount);
+        long blocks = 0;
+        for (long[] extent : extents) {
+            if (blocks >= blocksPerSplit && starts.size() < splitCount - 1) {
+                starts.add(extent);
+                blocks = 0;
+            }
+            blocks += extent[3];
+        }
+
+        final List<RexNode> conditions = new ArrayList<>(starts.size() + 1);
+        long[] lower = null;
+        for (long[] start : starts) {
+            conditions.add(oracleRange(lower, start));
+            lower = start;
+        }
+        conditions.add(oracleRange(lower, null));
+        return conditions;
+    }
+
+    // Нижняя граница включается, верхняя - нет; null - без границы
+    private RexNode oracleRange(long[] from, long[] to) {
+        return locatorRange(
+                from == null ? -1 : from[0], from == null ? -1 : from[1], from == null ? -1 : from[2],
+                to == null ? -1 : to[0], to == null ? -1 : to[1], to == null ? -1 : to[2]);
+    }
+
+    private RexNode locatorRange(long... operands) {
+        final List<RexNode> literals = new ArrayList<>(operands.length);
+        for (long operand : operands) {
+            literals.add(rexBuilder.makeExactLiteral(BigDecimal.valueOf(operand)));
+        }
+        return rexBuilder.makeCall(
+                rexBuilder.getTypeFactory().createSqlType(SqlTypeName.BOOLEAN),
+                JdbcSqlDialect.ROW_LOCATOR_RANGE,
+                literals);
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.drill.exec.store.idvp.jdbc;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.adapter.jdbc.JdbcImplementor;
 import org.apache.calcite.plan.ConventionTraitDef;
@@ -30,6 +31,7 @@ import org.apache.calcite.rel.RelShuttleImpl;
 import org.apache.calcite.rel.RelWriter;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.sql.*;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.sql.pretty.SqlPrettyWriter;
@@ -41,8 +43,12 @@ import org.apache.drill.exec.planner.physical.Prel;
 import org.apache.drill.exec.planner.physical.visitor.PrelVisitor;
 import org.apache.drill.exec.record.BatchSchema.SelectionVectorMode;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -50,27 +56,86 @@ import java.util.function.Function;
  */
 public class JdbcPrel extends AbstractRelNode implements Prel {
 
+    // Больше параметров не поддерживают некоторые СУБД (MS SQL Server - 2100), тогда литералы остаются в тексте
+    private static final int MAX_PARAMETERS = 1000;
+
     private final String sql;
+    private final List<JdbcParameter> parameters;
     private final double rows;
+    private final List<JdbcColumn> columns;
     private final DrillJdbcConvention convention;
+    private final RelNode tree;
+    private final boolean bindParameters;
+    // Число частей по настройкам, без запросов к СУБД: digest и стоимость считаются для каждого варианта плана
+    private final int plannedSplitCount;
 
     JdbcPrel(RelOptCluster cluster, RelTraitSet traitSet, JdbcIntermediatePrel prel) {
         super(cluster, traitSet);
         final RelNode input = prel.getInput();
-        //noinspection deprecation
-        rows = input.estimateRowCount(cluster.getMetadataQuery());
         rowType = input.getRowType();
         convention = (DrillJdbcConvention) input.getTraitSet().getTrait(ConventionTraitDef.INSTANCE);
 
         // generate sql for tree.
         final SqlDialect dialect = convention.getPlugin().getDialect();
+        tree = input.accept(new SubsetRemover());
+        bindParameters = convention.getPlugin().getConfig().isUseBindParameters();
+        parameters = new ArrayList<>();
+        sql = generateSql(dialect, tree, bindParameters ? parameters : null);
+
+        //noinspection deprecation
+        rows = input.estimateRowCount(cluster.getMetadataQuery());
+
+        columns = JdbcColumn.fromRowType(rowType, cluster.getMetadataQuery().getAverageColumnSizes(tree));
+        plannedSplitCount = new JdbcScanSplitter(convention.getPlugin(), cluster.getRexBuilder()).getPlannedSplitCount(tree);
+    }
+
+    /**
+     * Splits of the query. The split providers query the database, so this is called only for the chosen plan.
+     */
+    private SplitPlan createSplitPlan() {
+        final SqlDialect dialect = convention.getPlugin().getDialect();
+        final JdbcScanSplits scanSplits = new JdbcScanSplitter(convention.getPlugin(), getCluster().getRexBuilder()).split(tree);
+        final ImmutableList.Builder<String> splitsBuilder = ImmutableList.builder();
+        final ImmutableList.Builder<List<JdbcParameter>> splitParametersBuilder = ImmutableList.builder();
+        for (RexNode condition : scanSplits.getConditions()) {
+            final List<JdbcParameter> queryParameters = new ArrayList<>();
+            splitsBuilder.add(generateSql(dialect, JdbcScanSplitter.applySplit(tree, condition),
+                    bindParameters ? queryParameters : null));
+            splitParametersBuilder.add(queryParameters);
+        }
+        return new SplitPlan(splitsBuilder.build(), splitParametersBuilder.build(), scanSplits.getRowCount());
+    }
+
+    /**
+     * @param parameters receives values of the literals replaced by dynamic parameters, null to keep literals
+     */
+    private String generateSql(SqlDialect dialect, RelNode tree, List<JdbcParameter> parameters) {
+        if (parameters != null) {
+            final ParameterLifter lifter = new ParameterLifter();
+            final String sql = generateSql(dialect, tree, lifter);
+            if (lifter.parameters.size() <= MAX_PARAMETERS) {
+                parameters.addAll(lifter.parameters);
+                return sql;
+            }
+        }
+        return generateSql(dialect, tree, (ParameterLifter) null);
+    }
+
+    private String generateSql(SqlDialect dialect, RelNode tree, ParameterLifter lifter) {
         final JdbcImplementor jdbcImplementor = new JdbcImplementor(
                 dialect,
                 (JavaTypeFactory) getCluster().getTypeFactory());
-        final JdbcImplementor.Result result =
-                jdbcImplementor.visitChild(0, input.accept(new SubsetRemover()));
-
-        SqlPrettyWriter sqlWriter = new SqlPrettyWriter(dialect);
+        final JdbcImplementor.Result result = jdbcImplementor.visitChild(0, tree);
+
+        // Параметры нумеруются в порядке вывода: диалект может переставить части запроса при выводе
+        final List<Integer> parameterOrder = new ArrayList<>();
+        SqlPrettyWriter sqlWriter = new SqlPrettyWriter(dialect) {
+            @Override
+            public void dynamicParam(int index) {
+                parameterOrder.add(index);
+                super.dynamicParam(index);
+            }
+        };
         sqlWriter.setSelectListItemsOnSeparateLines(false);
         sqlWriter.setQuoteAllIdentifiers(false);
         sqlWriter.setIndentation(0);
@@ -81,9 +146,17 @@ public class JdbcPrel extends AbstractRelNode implements Prel {
             select.setSelectList(rewriteSelectList(select.getSelectList(), rowType));
         }
 
+        if (lifter != null) {
+            lifter.liftQuery(statement);
+        }
+
         statement.unparse(sqlWriter, 0, 0);
 
-        sql = sqlWriter.toString();
+        if (lifter != null) {
+            lifter.reorder(parameterOrder);
+        }
+
+        return sqlWriter.toString();
     }
 
     //Substitute newline. Also stripping away single line comments. Expecting hints to be nested in '/* <hint> */'
@@ -118,13 +191,19 @@ public class JdbcPrel extends AbstractRelNode implements Prel {
 
     @Override
     public PhysicalOperator getPhysicalOperator(PhysicalPlanCreator creator) {
-        JdbcGroupScan output = new JdbcGroupScan(sql, convention.getPlugin(), rows);
+        final SplitPlan splitPlan = createSplitPlan();
+        JdbcGroupScan output = new JdbcGroupScan(sql, parameters, splitPlan.queries, splitPlan.parameters, columns,
+                convention.getPlugin(), Math.max(rows, splitPlan.rowCount));
         return creator.addMetadata(this, output);
     }
 
     @Override
     public RelWriter explainTerms(RelWriter pw) {
-        return super.explainTerms(pw).item("sql", stripToOneLineSql(sql));
+        return super.explainTerms(pw)
+                .item("sql", stripToOneLineSql(sql))
+                // Параметры входят в digest: запросы с разными значениями не должны считаться одинаковыми
+                .itemIf("parameters", parameters, !parameters.isEmpty())
+                .itemIf("splits", plannedSplitCount, plannedSplitCount > 0);
     }
 
     @Override
@@ -158,6 +237,18 @@ public class JdbcPrel extends AbstractRelNode implements Prel {
         return false;
     }
 
+    private static class SplitPlan {
+        private final List<String> queries;
+        private final List<List<JdbcParameter>> parameters;
+        private final double rowCount;
+
+        SplitPlan(List<String> queries, List<List<JdbcParameter>> parameters, double rowCount) {
+            this.queries = queries;
+            this.parameters = parameters;
+            this.rowCount = rowCount;
+        }
+    }
+
     private class SubsetRemover extends RelShuttleImpl {
 
         @Override
@@ -170,6 +261,92 @@ public class JdbcPrel extends AbstractRelNode implements Prel {
         }
     }
 
+    /**
+     * Replaces literals of filter and join conditions with dynamic parameters. Select lists, grouping, ordering
+     * and arguments of functions keep their literals, since databases often require constants there. String
+     * literals are kept too, see {@link JdbcParameter#fromLiteral(SqlLiteral)}. Parameters are lifted in the order
+     * FROM (join conditions), WHERE, HAVING and then reordered as they are printed by the dialect.
+     */
+    private static class ParameterLifter {
+
+        private static final Set<SqlKind> LIFTED_KINDS = EnumSet.of(
+                SqlKind.AND, SqlKind.OR, SqlKind.NOT,
+                SqlKind.EQUALS, SqlKind.NOT_EQUALS,
+                SqlKind.LESS_THAN, SqlKind.LESS_THAN_OR_EQUAL,
+                SqlKind.GREATER_THAN, SqlKind.GREATER_THAN_OR_EQUAL,
+                SqlKind.IN, SqlKind.NOT_IN, SqlKind.BETWEEN, SqlKind.LIKE,
+                SqlKind.PLUS, SqlKind.MINUS, SqlKind.TIMES, SqlKind.DIVIDE);
+
+        private final List<JdbcParameter> parameters = new ArrayList<>();
+
+        void liftQuery(SqlNode node) {
+            if (node instanceof SqlSelect) {
+                final SqlSelect select = (SqlSelect) node;
+                liftFrom(select.getFrom());
+                select.setWhere(liftCondition(select.getWhere()));
+                select.setHaving(liftCondition(select.getHaving()));
+            } else if (node instanceof SqlOrderBy) {
+                liftQuery(((SqlOrderBy) node).query);
+            } else if (node != null && node.getKind().belongsTo(SqlKind.SET_QUERY)) {
+                for (SqlNode operand : ((SqlCall) node).getOperandList()) {
+                    liftQuery(operand);
+                }
+            }
+        }
+
+        private void liftFrom(SqlNode from) {
+            if (from instanceof SqlJoin) {
+                final SqlJoin join = (SqlJoin) from;
+                liftFrom(join.getLeft());
+                liftFrom(join.getRight());
+                join.setOperand(5, liftCondition(join.getCondition()));
+            } else if (from != null && from.getKind() == SqlKind.AS) {
+                liftFrom(((SqlCall) from).operand(0));
+            } else {
+                liftQuery(from);
+            }
+        }
+
+        /**
+         * Orders the parameters as their markers appear in the query text.
+         *
+         * @param order indexes of the lifted parameters in the order they were unparsed
+         */
+        void reorder(List<Integer> order) {
+            final List<JdbcParameter> lifted = new ArrayList<>(parameters);
+            parameters.clear();
+            for (int index : order) {
+                parameters.add(lifted.get(index));
+            }
+        }
+
+        private SqlNode liftCondition(SqlNode node) {
+            if (node instanceof SqlLiteral) {
+                final JdbcParameter parameter = JdbcParameter.fromLiteral((SqlLiteral) node);
+                if (parameter == null) {
+                    return node;
+                }
+                parameters.add(parameter);
+                return new SqlDynamicParam(parameters.size() - 1, node.getParserPosition());
+            } else if (node instanceof SqlNodeList) {
+                final SqlNodeList list = (SqlNodeList) node;
+                for (int i = 0; i < list.size(); i++) {
+                    list.set(i, liftCondition(list.get(i)));
+                }
+            } else if (node instanceof SqlSelect) {
+                liftQuery(node);
+            } else if (node instanceof SqlBasicCall && LIFTED_KINDS.contains(node.getKind())) {
+                final SqlBasicCall call = (SqlBasicCall) node;
+                // У LIKE третий операнд - ESCAPE, он остается литералом
+                final int count = node.getKind() == SqlKind.LIKE ? Math.min(2, call.operandCount()) : call.operandCount();
+                for (int i = 0; i < count; i++) {
+                    call.setOperand(i, liftCondition(call.operand(i)));
+                }
+            }
+            return node;
+        }
+    }
+
     private class AliasShuttle extends SqlShuttle {
         private int index = -1;
         private final Function<Integer, String> aliasGenerator;
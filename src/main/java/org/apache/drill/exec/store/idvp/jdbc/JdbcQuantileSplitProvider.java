@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.sql.JdbcSqlDialect;
+import org.apache.calcite.sql.SqlDialect;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a scan into ranges holding roughly equal number of rows. Boundaries are the lower bounds of
+ * {@code NTILE} buckets of the split column, computed by the database over the whole table or over a table sample.
+ * Falls back to equal-width ranges if the database can't compute the buckets.
+ */
+class JdbcQuantileSplitProvider extends JdbcRangeSplitProvider {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcQuantileSplitProvider.class);
+
+    JdbcQuantileSplitProvider(JdbcStoragePlugin plugin, RexBuilder rexBuilder) {
+        super(plugin, rexBuilder);
+    }
+
+    @Override
+    Boundaries computeBoundaries(TableScan scan, RelDataTypeField column, int splitCount, KeyType keyType) throws SQLException {
+        final SqlDialect dialect = plugin.getDialect();
+        final String table = JdbcScanSplitter.getTableName(scan, dialect);
+        final int samplePercent = plugin.getConfig().getSplitSamplePercent();
+
+        String source = null;
+        if (samplePercent > 0 && samplePercent < 100 && dialect instanceof JdbcSqlDialect) {
+            source = ((JdbcSqlDialect) dialect).tableSample(table, samplePercent);
+        }
+        final boolean sampled = source != null;
+        if (!sampled) {
+            source = table;
+        }
+
+        final String columnName = dialect.quoteIdentifier(column.getName());
+        final String sql = "SELECT MIN(" + columnName + "), COUNT(*) FROM (SELECT " + columnName
+                + ", NTILE(" + splitCount + ") OVER (ORDER BY " + columnName + ") AS split_bucket FROM " + source
+                + " WHERE " + columnName + " IS NOT NULL) split_buckets GROUP BY split_bucket";
+
+        final List<BigDecimal> lowerBounds = new ArrayList<>(splitCount);
+        long rowCount = 0;
+        try (Connection connection = plugin.getSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                final Object lowerBound = resultSet.getObject(1);
+                if (lowerBound != null) {
+                    lowerBounds.add(keyType.toKey(lowerBound));
+                }
+                rowCount += resultSet.getLong(2);
+            }
+        } catch (SQLException e) {
+            logger.debug("Failed to compute quantiles of {}.{}. Equal-width splits are used", table, column.getName(), e);
+            return super.computeBoundaries(scan, column, splitCount, keyType);
+        }
+
+        if (lowerBounds.isEmpty()) {
+            // empty sample
+            return super.computeBoundaries(scan, column, splitCount, keyType);
+        }
+
+        if (sampled) {
+            rowCount = rowCount * 100 / samplePercent;
+        }
+
+        // lower bound of the first bucket is the minimum, it does not divide anything
+        final BigDecimal min = Collections.min(lowerBounds);
+        return new Boundaries(normalize(lowerBounds, min, keyType), rowCount);
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.DateString;
+import org.apache.calcite.util.TimestampString;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits a scan into ranges of equal width between minimum and maximum value of a numeric or temporal column.
+ */
+class JdbcRangeSplitProvider implements JdbcSplitProvider {
+
+    private static final int DIVISION_SCALE = 10;
+
+    final JdbcStoragePlugin plugin;
+    final RexBuilder rexBuilder;
+
+    JdbcRangeSplitProvider(JdbcStoragePlugin plugin, RexBuilder rexBuilder) {
+        this.plugin = plugin;
+        this.rexBuilder = rexBuilder;
+    }
+
+    static boolean supports(List<RelDataTypeField> columns) {
+        return columns.size() == 1 && KeyType.of(columns.get(0).getType().getSqlTypeName()) != null;
+    }
+
+    @Override
+    public JdbcScanSplits split(TableScan scan, List<RelDataTypeField> columns, int splitCount) throws SQLException {
+        if (columns.size() != 1) {
+            return JdbcScanSplits.NONE;
+        }
+
+        final RelDataTypeField column = columns.get(0);
+        final KeyType keyType = KeyType.of(column.getType().getSqlTypeName());
+        if (keyType == null) {
+            return JdbcScanSplits.NONE;
+        }
+
+        final String cacheKey = Joiner.on('.').join(scan.getTable().getQualifiedName()) + '#' + column.getName() + '#' + splitCount;
+        final Boundaries boundaries;
+        try {
+            boundaries = plugin.getSplitBoundariesCache().get(cacheKey,
+                    () -> computeBoundaries(scan, column, splitCount, keyType));
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), SQLException.class);
+            throw new SQLException(e.getCause());
+        }
+
+        return new JdbcScanSplits(toConditions(column, keyType, boundaries.keys), boundaries.rowCount);
+    }
+
+    /**
+     * Computes boundaries of equal-width ranges between minimum and maximum value of the column.
+     */
+    Boundaries computeBoundaries(TableScan scan, RelDataTypeField column, int splitCount, KeyType keyType) throws SQLException {
+        final SqlDialect dialect = plugin.getDialect();
+        final String columnName = dialect.quoteIdentifier(column.getName());
+        final String sql = "SELECT MIN(" + columnName + "), MAX(" + columnName + "), COUNT(*) FROM "
+                + JdbcScanSplitter.getTableName(scan, dialect);
+
+        try (Connection connection = plugin.getSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            if (!resultSet.next()) {
+                return new Boundaries(Collections.emptyList(), -1);
+            }
+
+            final Object min = resultSet.getObject(1);
+            final Object max = resultSet.getObject(2);
+            final long rowCount = resultSet.getLong(3);
+            if (min == null || max == null) {
+                return new Boundaries(Collections.emptyList(), rowCount);
+            }
+
+            return new Boundaries(equalWidthBoundaries(keyType.toKey(min), keyType.toKey(max), splitCount, keyType),
+                    rowCount);
+        }
+    }
+
+    private static List<BigDecimal> equalWidthBoundaries(BigDecimal min, BigDecimal max, int splitCount, KeyType keyType) {
+        final BigDecimal width = max.subtract(min).divide(BigDecimal.valueOf(splitCount), DIVISION_SCALE, RoundingMode.FLOOR);
+        final List<BigDecimal> boundaries = new ArrayList<>(splitCount - 1);
+        for (int i = 1; i < splitCount; i++) {
+            boundaries.add(min.add(width.multiply(BigDecimal.valueOf(i))));
+        }
+        return normalize(boundaries, min, keyType);
+    }
+
+    /**
+     * Rounds boundaries to the column domain, removes duplicates and boundaries that would produce empty first split.
+     */
+    static List<BigDecimal> normalize(Collection<BigDecimal> boundaries, BigDecimal min, KeyType keyType) {
+        final TreeSet<BigDecimal> result = new TreeSet<>();
+        for (BigDecimal boundary : boundaries) {
+            final BigDecimal normalized = keyType.isIntegral() ? boundary.setScale(0, RoundingMode.FLOOR) : boundary;
+            if (min == null || normalized.compareTo(min) > 0) {
+                result.add(normalized);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Builds split conditions from sorted boundaries. First split also takes NULL values of the column.
+     */
+    List<RexNode> toConditions(RelDataTypeField column, KeyType keyType, List<BigDecimal> boundaries) {
+        final List<RexNode> conditions = new ArrayList<>(boundaries.size() + 1);
+        if (boundaries.isEmpty()) {
+            return conditions;
+        }
+
+        final RelDataType type = column.getType();
+        final RexNode ref = rexBuilder.makeInputRef(type, column.getIndex());
+
+        RexNode lower = null;
+        for (BigDecimal boundary : boundaries) {
+            final RexNode upper = keyType.toLiteral(rexBuilder, type, boundary);
+            final RexNode lessThanUpper = rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, ref, upper);
+            if (lower == null) {
+                conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.OR,
+                        lessThanUpper,
+                        rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, ref)));
+            } else {
+                conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.AND,
+                        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, ref, lower),
+                        lessThanUpper));
+            }
+            lower = upper;
+        }
+        conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, ref, lower));
+
+        return conditions;
+    }
+
+    /**
+     * Sorted split boundaries in the key space of the column and the row count of the table (negative if unknown).
+     */
+    static final class Boundaries {
+        final List<BigDecimal> keys;
+        final long rowCount;
+
+        Boundaries(List<BigDecimal> keys, long rowCount) {
+            this.keys = keys;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * Column types usable for range splits. Values are mapped to a numeric key: the value itself for numbers,
+     * epoch day for dates and epoch millis for timestamps.
+     */
+    enum KeyType {
+        INTEGER,
+        DECIMAL,
+        APPROXIMATE,
+        DATE,
+        TIMESTAMP;
+
+        static KeyType of(SqlTypeName typeName) {
+            switch (typeName) {
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                case BIGINT:
+                    return INTEGER;
+                case DECIMAL:
+                    return DECIMAL;
+                case REAL:
+                case FLOAT:
+                case DOUBLE:
+                    return APPROXIMATE;
+                case DATE:
+                    return DATE;
+                case TIMESTAMP:
+                    return TIMESTAMP;
+                default:
+                    return null;
+            }
+        }
+
+        boolean isIntegral() {
+            return this == INTEGER || this == DATE || this == TIMESTAMP;
+        }
+
+        BigDecimal toKey(Object value) {
+            switch (this) {
+                case DATE:
+                    return BigDecimal.valueOf(toLocalDate(value).toEpochDay());
+                case TIMESTAMP:
+                    if (value instanceof Timestamp) {
+                        return BigDecimal.valueOf(((Timestamp) value).toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+                    }
+                    return BigDecimal.valueOf(toLocalDate(value).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli());
+                default:
+                    if (value instanceof BigDecimal) {
+                        return (BigDecimal) value;
+                    } else if (value instanceof Long || value instanceof Integer
+                            || value instanceof Short || value instanceof Byte) {
+                        return BigDecimal.valueOf(((Number) value).longValue());
+                    } else if (value instanceof Number) {
+                        return BigDecimal.valueOf(((Number) value).doubleValue());
+                    }
+                    return new BigDecimal(value.toString());
+            }
+        }
+
+        RexNode toLiteral(RexBuilder rexBuilder, RelDataType type, BigDecimal key) {
+            switch (this) {
+                case INTEGER:
+                    return rexBuilder.makeExactLiteral(key.setScale(0, RoundingMode.FLOOR), type);
+                case DECIMAL:
+                    final int scale = Math.max(type.getScale(), 0);
+                    return rexBuilder.makeExactLiteral(key.setScale(scale, RoundingMode.FLOOR), type);
+                case APPROXIMATE:
+                    return rexBuilder.makeApproxLiteral(key, type);
+                case DATE:
+                    return rexBuilder.makeDateLiteral(DateString.fromDaysSinceEpoch(key.intValue()));
+                case TIMESTAMP:
+                    return rexBuilder.makeTimestampLiteral(TimestampString.fromMillisSinceEpoch(key.longValue()),
+                            Math.max(type.getPrecision(), 0));
+                default:
+                    throw new IllegalStateException("Unknown key type " + this);
+            }
+        }
+
+        private static LocalDate toLocalDate(Object value) {
+            if (value instanceof java.sql.Date) {
+                return ((java.sql.Date) value).toLocalDate();
+            } else if (value instanceof Timestamp) {
+                return ((Timestamp) value).toLocalDateTime().toLocalDate();
+            } else if (value instanceof java.util.Date) {
+                return new java.sql.Date(((java.util.Date) value).getTime()).toLocalDate();
+            }
+            return LocalDate.parse(value.toString());
+        }
+    }
+}
@@ -20,13 +20,17 @@ package org.apache.drill.exec.store.idvp.jdbc;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.drill.common.AutoCloseables;
 import org.apache.drill.common.exceptions.UserException;
 import org.apache.drill.common.types.TypeProtos;
 import org.apache.drill.common.types.TypeProtos.MajorType;
 import org.apache.drill.common.types.TypeProtos.MinorType;
 import org.apache.drill.common.types.Types;
+import org.apache.drill.exec.exception.OutOfMemoryException;
 import org.apache.drill.exec.exception.SchemaChangeException;
 import org.apache.drill.exec.expr.TypeHelper;
 import org.apache.drill.exec.ops.FragmentContext;
@@ -36,23 +40,46 @@ import org.apache.drill.exec.record.MaterializedField;
 import org.apache.drill.exec.server.options.TypeValidators;
 import org.apache.drill.exec.store.AbstractRecordReader;
 import org.apache.drill.exec.vector.*;
+import org.apache.drill.exec.vector.complex.impl.VectorContainerWriter;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.Date;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class JdbcRecordReader extends AbstractRecordReader {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcRecordReader.class);
     private static final TypeValidators.BooleanValidator DECIMAL_ENABLED = new TypeValidators.BooleanValidator("planner.enable_decimal_data_type");
 
+    // nullables use one more than record count
+    static final int MAX_BATCH_ROWS = 65535;
+    // Оценки размера значений до первого прочитанного батча
+    private static final int FIXED_WIDTH_ESTIMATE = 8;
+    private static final int VARIABLE_WIDTH_ESTIMATE = 50;
+    // Объём значений переменной длины проверяется раз в столько строк
+    private static final int BATCH_BYTES_CHECK_ROWS = 64;
+
     // Эти маппинги должны быть согласованы
     private static final ImmutableMap<Integer, SqlTypeName> DRILL_TYPE_NAMES;
     private static final ImmutableMap<Integer, TypeInfo> JDBC_TYPE_MAPPINGS;
 
+    // Маппинги режима useNarrowTypes, имеют приоритет над основными
+    private static final ImmutableMap<Integer, SqlTypeName> NARROW_DRILL_TYPE_NAMES;
+    private static final ImmutableMap<Integer, TypeInfo> NARROW_TYPE_MAPPINGS;
+    // Беззнаковые типы MySQL читаются в следующий по ширине знаковый тип
+    private static final ImmutableMap<Integer, SqlTypeName> UNSIGNED_DRILL_TYPE_NAMES;
+    private static final ImmutableMap<Integer, TypeInfo> UNSIGNED_TYPE_MAPPINGS;
+
     static {
 
         DRILL_TYPE_NAMES = ImmutableMap.<Integer, SqlTypeName>builder()
@@ -69,6 +96,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
                 .put(java.sql.Types.NCHAR, SqlTypeName.VARCHAR)
                 .put(java.sql.Types.NVARCHAR, SqlTypeName.VARCHAR)
                 .put(java.sql.Types.LONGNVARCHAR, SqlTypeName.VARCHAR)
+                .put(java.sql.Types.NCLOB, SqlTypeName.VARCHAR)
 
                 .put(java.sql.Types.VARBINARY, SqlTypeName.VARBINARY)
                 .put(java.sql.Types.LONGVARBINARY, SqlTypeName.VARBINARY)
@@ -116,6 +144,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
                 .put(java.sql.Types.NCHAR, new TypeInfo(MinorType.VARCHAR))
                 .put(java.sql.Types.NVARCHAR, new TypeInfo(MinorType.VARCHAR))
                 .put(java.sql.Types.LONGNVARCHAR, new TypeInfo(MinorType.VARCHAR))
+                .put(java.sql.Types.NCLOB, new TypeInfo(MinorType.VARCHAR))
 
                 .put(java.sql.Types.VARBINARY, new TypeInfo(MinorType.VARBINARY))
                 .put(java.sql.Types.LONGVARBINARY, new TypeInfo(MinorType.VARBINARY))
@@ -148,27 +177,161 @@ public class JdbcRecordReader extends AbstractRecordReader {
                 .put(java.sql.Types.DISTINCT, new TypeInfo(MinorType.VARCHAR, new Object2VarCharCopier.Provider()))
 
                 .build();
+
+        NARROW_DRILL_TYPE_NAMES = ImmutableMap.<Integer, SqlTypeName>builder()
+                .put(java.sql.Types.TINYINT, SqlTypeName.TINYINT)
+                .put(java.sql.Types.SMALLINT, SqlTypeName.SMALLINT)
+                .put(java.sql.Types.CHAR, SqlTypeName.VARCHAR)
+                .put(java.sql.Types.TIME_WITH_TIMEZONE, SqlTypeName.TIME)
+                .put(java.sql.Types.TIMESTAMP_WITH_TIMEZONE, SqlTypeName.TIMESTAMP)
+                .build();
+
+        NARROW_TYPE_MAPPINGS = ImmutableMap.<Integer, TypeInfo>builder()
+                .put(java.sql.Types.TINYINT, new TypeInfo(MinorType.TINYINT))
+                .put(java.sql.Types.SMALLINT, new TypeInfo(MinorType.SMALLINT))
+                .put(java.sql.Types.CHAR, new TypeInfo(MinorType.VARCHAR))
+                .put(java.sql.Types.TIME_WITH_TIMEZONE, new TypeInfo(MinorType.TIME))
+                .put(java.sql.Types.TIMESTAMP_WITH_TIMEZONE, new TypeInfo(MinorType.TIMESTAMP))
+                .build();
+
+        UNSIGNED_DRILL_TYPE_NAMES = ImmutableMap.<Integer, SqlTypeName>builder()
+                .put(java.sql.Types.TINYINT, SqlTypeName.SMALLINT)
+                .put(java.sql.Types.SMALLINT, SqlTypeName.INTEGER)
+                .put(java.sql.Types.INTEGER, SqlTypeName.BIGINT)
+                .build();
+
+        UNSIGNED_TYPE_MAPPINGS = ImmutableMap.<Integer, TypeInfo>builder()
+                .put(java.sql.Types.TINYINT, new TypeInfo(MinorType.SMALLINT))
+                .put(java.sql.Types.SMALLINT, new TypeInfo(MinorType.INT))
+                .put(java.sql.Types.INTEGER, new TypeInfo(MinorType.BIGINT))
+                .build();
     }
 
+    // Типы, значения которых PostgreSQL отдает как текст в кодировке клиента (всегда UTF-8)
+    private static final ImmutableSet<Integer> RAW_UTF8_TYPES = ImmutableSet.of(
+            java.sql.Types.CHAR,
+            java.sql.Types.VARCHAR,
+            java.sql.Types.LONGVARCHAR,
+            java.sql.Types.NCHAR,
+            java.sql.Types.NVARCHAR,
+            java.sql.Types.LONGNVARCHAR);
+
+    // Типы с дополнением пробелами до длины колонки
+    private static final ImmutableSet<Integer> PADDED_TYPES = ImmutableSet.of(
+            java.sql.Types.CHAR,
+            java.sql.Types.NCHAR);
+
     public static SqlTypeName getNameForJdbcType(int jdbcType) {
         return DRILL_TYPE_NAMES.get(jdbcType);
     }
 
+    /**
+     * Returns the type a column is read as with the given plugin config.
+     *
+     * @param typeName database specific type name of the column
+     */
+    public static SqlTypeName getNameForJdbcType(int jdbcType, String typeName, JdbcStorageConfig config) {
+        if (config.isUseComplexTypes() && JdbcComplexCopier.isComplex(jdbcType, typeName)) {
+            // Drill не знает тип сложных колонок при планировании
+            return SqlTypeName.ANY;
+        }
+        if (config.isUseNarrowTypes()) {
+            final SqlTypeName name = (isUnsigned(typeName) ? UNSIGNED_DRILL_TYPE_NAMES : NARROW_DRILL_TYPE_NAMES).get(jdbcType);
+            if (name != null) {
+                return name;
+            }
+        }
+        return getNameForJdbcType(jdbcType);
+    }
+
+    private static TypeInfo getTypeInfo(int jdbcType, String typeName, boolean narrowTypes) {
+        if (narrowTypes) {
+            final TypeInfo typeInfo = (isUnsigned(typeName) ? UNSIGNED_TYPE_MAPPINGS : NARROW_TYPE_MAPPINGS).get(jdbcType);
+            if (typeInfo != null) {
+                return typeInfo;
+            }
+        }
+        return JDBC_TYPE_MAPPINGS.get(jdbcType);
+    }
+
+    private static boolean isUnsigned(String typeName) {
+        // MySQL сообщает беззнаковые типы как "TINYINT UNSIGNED"
+        return typeName != null && StringUtils.containsIgnoreCase(typeName, "UNSIGNED");
+    }
+
     private final DataSource source;
+    private final JdbcStorageConfig config;
     private final String storagePluginName;
     private final String sql;
     private final boolean decimalEnabled;
+    private final int prefetchQueueSize;
+    private final int targetBatchSize;
+    private final int initialFetchSize;
+    private final boolean adaptiveFetchSize;
+    private final boolean rawUtf8Strings;
+    private final boolean complexTypes;
+    private final boolean narrowTypes;
+    private int fetchSize;
+    private int batchRows = 4095;
+    private int[] valueWidths;
+    private OperatorContext operatorContext;
     private ResultSet resultSet;
     private Connection connection;
     private Statement statement;
     private ImmutableList<ValueVector> vectors;
     private ImmutableList<Copier<?>> copiers;
-
-    JdbcRecordReader(FragmentContext context, DataSource source, String sql, String storagePluginName) {
-        this.source = source;
+    private RowCopier rowCopier;
+    private VectorContainerWriter complexWriter;
+    private final List<JdbcComplexCopier> complexCopiers = new ArrayList<>();
+    private final List<JdbcParameter> parameters;
+    private final List<JdbcColumn> plannedColumns;
+    private List<Integer> widthHints;
+    private final List<JdbcLobCopier<?>> lobCopiers = new ArrayList<>();
+    private final List<ValueVector> lobVectors = new ArrayList<>();
+    private JdbcRowPrefetcher prefetcher;
+    private final FragmentContext.ExecutorState executorState;
+    private JdbcStatementWatchdog watchdog;
+    private boolean exhausted;
+
+    /**
+     * @param parameters     values of the dynamic parameters of the query
+     * @param plannedColumns columns of the query as planned, null if unknown
+     */
+    JdbcRecordReader(FragmentContext context, JdbcStoragePlugin plugin, String sql, List<JdbcParameter> parameters,
+                     List<JdbcColumn> plannedColumns) {
+        this.source = plugin.getSource();
+        this.config = plugin.getConfig();
         this.sql = sql;
-        this.storagePluginName = storagePluginName;
+        this.parameters = parameters;
+        this.plannedColumns = plannedColumns;
+        this.executorState = context.getExecutorState();
+        this.storagePluginName = plugin.getName();
         this.decimalEnabled = context.getOptions().getOption(DECIMAL_ENABLED);
+        this.prefetchQueueSize = plugin.getConfig().getPrefetchQueueSize();
+        this.targetBatchSize = plugin.getConfig().getTargetBatchSize();
+        this.initialFetchSize = getInitialFetchSize(plugin);
+        this.adaptiveFetchSize = plugin.getConfig().isUseAdaptiveFetchSize() && initialFetchSize > 0;
+        this.fetchSize = initialFetchSize;
+        this.rawUtf8Strings = isPostgres(plugin);
+        this.complexTypes = plugin.getConfig().isUseComplexTypes();
+        this.narrowTypes = plugin.getConfig().isUseNarrowTypes();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean isPostgres(JdbcStoragePlugin plugin) {
+        return plugin.getDialect().getDatabaseProduct() == SqlDialect.DatabaseProduct.POSTGRESQL;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int getInitialFetchSize(JdbcStoragePlugin plugin) {
+        final JdbcStorageConfig config = plugin.getConfig();
+        if (plugin.getDialect().getDatabaseProduct() == SqlDialect.DatabaseProduct.MYSQL
+                && !StringUtils.containsIgnoreCase(config.getUrl(), "useCursorFetch=true")) {
+            // Без серверного курсора MySQL Connector/J стримит строки только с таким fetch size,
+            // иначе весь результат загружается в память
+            return Integer.MIN_VALUE;
+        }
+        return config.getFetchSize();
     }
 
     private static String nameFromType(int javaSqlType) {
@@ -189,12 +352,37 @@ public class JdbcRecordReader extends AbstractRecordReader {
 
     }
 
-    private Copier<?> getCopier(int offset, ResultSet result, TypeInfo typeInfo, MajorType type, ValueVector v) {
+    private Copier<?> getCopier(int offset, ResultSet result, int jdbcType, TypeInfo typeInfo, MajorType type, ValueVector v) {
 
         if (typeInfo.copierOverride != null) {
             return typeInfo.copierOverride.create(offset, resultSet, v.getMutator());
         }
 
+        if (JdbcLobCopier.LOB_TYPES.contains(jdbcType)) {
+            final JdbcLobCopier<?> copier = JdbcLobCopier.create(offset, result, v, operatorContext, config);
+            lobCopiers.add(copier);
+            lobVectors.add(v);
+            return copier;
+        }
+
+        if (narrowTypes && PADDED_TYPES.contains(jdbcType) && v instanceof NullableVarCharVector) {
+            return new TrimmedVarCharCopier(offset, result, rawUtf8Strings, (NullableVarCharVector.Mutator) v.getMutator());
+        }
+
+        if (rawUtf8Strings && RAW_UTF8_TYPES.contains(jdbcType) && v instanceof NullableVarCharVector) {
+            return new RawVarCharCopier(offset, result, (NullableVarCharVector.Mutator) v.getMutator());
+        }
+
+        if (typeInfo.minorType == MinorType.VARDECIMAL) {
+            if (v instanceof NullableVarDecimalVector
+                    && type.getScale() <= type.getPrecision()
+                    && type.getPrecision() <= (rawUtf8Strings ? LongDecimalCopier.MAX_PRECISION : LongDecimalCopier.MAX_DOUBLE_PRECISION)) {
+                return new LongDecimalCopier(offset, type, rawUtf8Strings, result, (NullableVarDecimalVector.Mutator) v.getMutator());
+            } else if (v instanceof NullableFloat8Vector && rawUtf8Strings) {
+                return new RawDecimalFloat8Copier(offset, result, (NullableFloat8Vector.Mutator) v.getMutator());
+            }
+        }
+
         if (v instanceof NullableBigIntVector) {
             return new BigIntCopier(offset, result, (NullableBigIntVector.Mutator) v.getMutator());
         } else if (v instanceof NullableFloat4Vector) {
@@ -203,6 +391,10 @@ public class JdbcRecordReader extends AbstractRecordReader {
             return new Float8Copier(offset, result, (NullableFloat8Vector.Mutator) v.getMutator());
         } else if (v instanceof NullableIntVector) {
             return new IntCopier(offset, result, (NullableIntVector.Mutator) v.getMutator());
+        } else if (v instanceof NullableSmallIntVector) {
+            return new SmallIntCopier(offset, result, (NullableSmallIntVector.Mutator) v.getMutator());
+        } else if (v instanceof NullableTinyIntVector) {
+            return new TinyIntCopier(offset, result, (NullableTinyIntVector.Mutator) v.getMutator());
         } else if (v instanceof NullableVarCharVector) {
             return new VarCharCopier(offset, result, (NullableVarCharVector.Mutator) v.getMutator());
         } else if (v instanceof NullableVarBinaryVector) {
@@ -224,20 +416,31 @@ public class JdbcRecordReader extends AbstractRecordReader {
 
     @Override
     public void setup(OperatorContext operatorContext, OutputMutator output) {
+        this.operatorContext = operatorContext;
         try {
 
             connection = source.getConnection();
 
             try {
+                // PostgreSQL использует курсор только при выключенном autocommit
                 connection.setAutoCommit(false);
-                statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-                statement.setFetchSize(1024);
+                statement = parameters.isEmpty()
+                        ? connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+                        : connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
             } catch (Exception e) {
                 logger.info("Ошибка при использовании стриминга ResultSet", e);
-                statement = connection.createStatement();
+                statement = parameters.isEmpty() ? connection.createStatement() : connection.prepareStatement(sql);
             }
 
-            resultSet = statement.executeQuery(sql);
+            watchdog = JdbcStatementWatchdog.watch(executorState, statement, storagePluginName);
+
+            if (statement instanceof PreparedStatement) {
+                JdbcParameter.bind((PreparedStatement) statement, parameters);
+                resultSet = ((PreparedStatement) statement).executeQuery();
+            } else {
+                resultSet = statement.executeQuery(sql);
+            }
 
             final ResultSetMetaData meta = resultSet.getMetaData();
             final int columns = meta.getColumnCount();
@@ -245,8 +448,11 @@ public class JdbcRecordReader extends AbstractRecordReader {
             ImmutableList.Builder<ValueVector> vectorBuilder = ImmutableList.builder();
             ImmutableList.Builder<Copier<?>> copierBuilder = ImmutableList.builder();
 
+            // Имена и оценки ширины колонок берутся из плана, только если число колонок совпало с планом
+            final boolean planned = plannedColumns != null && plannedColumns.size() == columns;
+            widthHints = new ArrayList<>(columns);
             for (int i = 1; i <= columns; i++) {
-                String name = meta.getColumnLabel(i);
+                String name = planned ? plannedColumns.get(i - 1).getName() : meta.getColumnLabel(i);
 
                 final String baseName = name;
                 int nameIndex = 0;
@@ -256,7 +462,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
                 columnNames.add(name);
 
                 final int jdbcType = meta.getColumnType(i);
-                final TypeInfo typeInfo = JDBC_TYPE_MAPPINGS.get(jdbcType);
+                final TypeInfo typeInfo = getTypeInfo(jdbcType, meta.getColumnTypeName(i), narrowTypes);
                 if (typeInfo == null) {
                     throw UserException
                             .unsupportedError()
@@ -271,44 +477,42 @@ public class JdbcRecordReader extends AbstractRecordReader {
                             .build(logger);
                 }
 
-                final MajorType type;
-                if (typeInfo.minorType == MinorType.VARDECIMAL) {
-                    if (decimalEnabled) {
-                        int scale = meta.getScale(i);
-                        if (scale <= 0) {
-                            //если scale < 0, то там заведомо только целые числа
-                            type = Types.optional(MinorType.BIGINT);
-                        } else {
-                            int precision = meta.getPrecision(i);
-                            if (precision <= 0) {
-                                precision = 38;
-                            }
-
-                            type = MajorType
-                                    .newBuilder()
-                                    .setMode(TypeProtos.DataMode.OPTIONAL)
-                                    .setMinorType(typeInfo.minorType)
-                                    .setScale(scale)
-                                    .setPrecision(precision)
-                                    .build();
-                        }
-                    } else {
-                        type = Types.optional(MinorType.FLOAT8);
+                if (complexTypes && JdbcComplexCopier.isComplex(jdbcType, meta.getColumnTypeName(i))) {
+                    if (complexWriter == null) {
+                        complexWriter = new VectorContainerWriter(output);
                     }
-                } else {
-                    type = Types.optional(typeInfo.minorType);
+                    final JdbcComplexCopier copier =
+                            JdbcComplexCopier.create(i, name, jdbcType, resultSet, complexWriter, operatorContext,
+                                    decimalEnabled);
+                    complexCopiers.add(copier);
+                    copierBuilder.add(copier);
+                    continue;
                 }
 
+                final MajorType type = typeInfo.minorType == MinorType.VARDECIMAL
+                        ? getDecimalType(meta.getPrecision(i), meta.getScale(i))
+                        : Types.optional(typeInfo.minorType);
+
                 final MaterializedField field = MaterializedField.create(name, type);
                 final Class<? extends ValueVector> clazz = TypeHelper.getValueVectorClass(type.getMinorType(), type.getMode());
                 ValueVector vector = output.addField(field, clazz);
                 vectorBuilder.add(vector);
-                copierBuilder.add(getCopier(i, resultSet, typeInfo, type, vector));
+                widthHints.add(planned && plannedColumns.get(i - 1).getWidth() > 0 ? plannedColumns.get(i - 1).getWidth() : -1);
+                copierBuilder.add(getCopier(i, resultSet, jdbcType, typeInfo, type, vector));
 
             }
 
             vectors = vectorBuilder.build();
             copiers = copierBuilder.build();
+            updateBatchRows(0);
+
+            // LOB и сложные значения читаются только в потоке оператора
+            if (prefetchQueueSize > 0 && complexCopiers.isEmpty() && lobCopiers.isEmpty()) {
+                prefetcher = new JdbcRowPrefetcher(resultSet, copiers, prefetchQueueSize, storagePluginName);
+                prefetcher.start();
+            } else {
+                rowCopier = JdbcRowCopierFactory.create(resultSet, copiers);
+            }
 
         } catch (SQLException | SchemaChangeException e) {
             throw UserException.dataReadError(e)
@@ -320,20 +524,74 @@ public class JdbcRecordReader extends AbstractRecordReader {
     }
 
 
+    private MajorType getDecimalType(int precision, int scale) {
+        if (!decimalEnabled) {
+            return Types.optional(MinorType.FLOAT8);
+        }
+        if (scale <= 0) {
+            //если scale < 0, то там заведомо только целые числа
+            return Types.optional(MinorType.BIGINT);
+        }
+        return MajorType
+                .newBuilder()
+                .setMode(TypeProtos.DataMode.OPTIONAL)
+                .setMinorType(MinorType.VARDECIMAL)
+                .setScale(scale)
+                .setPrecision(precision <= 0 ? 38 : precision)
+                .build();
+    }
+
     @Override
     public int next() {
         int counter = 0;
         try {
-            while (counter < 4095) { // loop at 4095 since nullables use one more than record count and we
-                // allocate on powers of two.
-                if (!resultSet.next()) {
-                    break;
+            if (prefetcher != null) {
+                counter = prefetcher.next(batchRows, targetBatchSize);
+                prefetcher.updateStats(operatorContext.getStats());
+                exhausted = counter == 0;
+            } else {
+                final long batchStart = adaptiveFetchSize ? System.nanoTime() : 0;
+                long fetchNanos = 0;
+                long lobBytes = 0;
+                while (counter < batchRows) {
+                    final long fetchStart = adaptiveFetchSize ? System.nanoTime() : 0;
+                    final boolean hasNext = resultSet.next();
+                    if (adaptiveFetchSize) {
+                        fetchNanos += System.nanoTime() - fetchStart;
+                    }
+                    if (!hasNext) {
+                        exhausted = true;
+                        break;
+                    }
+
+                    if (rowCopier != null) {
+                        rowCopier.copy(counter);
+                    } else {
+                        for (Copier<?> c : copiers) {
+                            c.copy(counter);
+                        }
+                    }
+                    counter++;
+
+                    // Значения могут быть много длиннее оценки по предыдущему батчу
+                    if (counter % BATCH_BYTES_CHECK_ROWS == 0 && variableWidthBytes(counter) >= targetBatchSize) {
+                        break;
+                    }
+
+                    if (!lobCopiers.isEmpty()) {
+                        // Размер LOB неизвестен заранее, поэтому батч завершается по фактическому объёму
+                        for (JdbcLobCopier<?> c : lobCopiers) {
+                            lobBytes += c.takeBatchBytes();
+                        }
+                        if (lobBytes >= targetBatchSize) {
+                            break;
+                        }
+                    }
                 }
 
-                for (Copier<?> c : copiers) {
-                    c.copy(counter);
+                if (adaptiveFetchSize && counter > 0) {
+                    adaptFetchSize(fetchNanos, System.nanoTime() - batchStart);
                 }
-                counter++;
             }
         } catch (SQLException e) {
             throw UserException
@@ -347,16 +605,135 @@ public class JdbcRecordReader extends AbstractRecordReader {
         for (ValueVector vv : vectors) {
             vv.getMutator().setValueCount(counter > 0 ? counter : 0);
         }
+        if (complexWriter != null) {
+            complexWriter.setValueCount(counter);
+        }
+        for (JdbcComplexCopier c : complexCopiers) {
+            c.setValueCount(counter);
+        }
+
+        if (counter > 0) {
+            updateBatchRows(counter);
+        }
 
         return counter > 0 ? counter : 0;
     }
 
+    /**
+     * Returns bytes of the variable width values written into the first rowCount rows of the batch.
+     */
+    private long variableWidthBytes(int rowCount) {
+        long bytes = 0;
+        for (ValueVector v : vectors) {
+            if (v instanceof VariableWidthVector) {
+                bytes += ((VariableWidthVector) v).getOffsetVector().getAccessor().get(rowCount);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Doubles the fetch size while waiting for the database takes longer than copying rows into vectors.
+     * Fetch size does not grow beyond a batch, so the rows buffered by the driver take about a batch of memory.
+     */
+    private void adaptFetchSize(long fetchNanos, long batchNanos) throws SQLException {
+        final int maxFetchSize = Math.max(batchRows, initialFetchSize);
+        if (fetchNanos <= batchNanos - fetchNanos || fetchSize >= maxFetchSize) {
+            return;
+        }
+        fetchSize = Math.min(fetchSize * 2, maxFetchSize);
+        resultSet.setFetchSize(fetchSize);
+        logger.debug("Fetch size increased to {}", fetchSize);
+    }
+
+    /**
+     * Allocates vectors for the row count of the next batch, variable width vectors get the observed
+     * average value size.
+     */
+    @Override
+    public void allocate(Map<String, ValueVector> vectorMap) throws OutOfMemoryException {
+        if (vectors == null) {
+            super.allocate(vectorMap);
+            return;
+        }
+
+        for (ValueVector v : vectorMap.values()) {
+            final int index = vectors.indexOf(v);
+            if (index < 0) {
+                v.allocateNew();
+            } else {
+                AllocationHelper.allocate(v, batchRows, valueWidths[index]);
+            }
+        }
+        if (complexWriter != null) {
+            complexWriter.allocate();
+        }
+        for (JdbcComplexCopier c : complexCopiers) {
+            c.allocate();
+        }
+    }
+
+    /**
+     * Chooses row count of the next batch, so that the batch takes about {@code targetBatchSize} bytes.
+     *
+     * @param rowCount row count of the batch just read, 0 before the first batch
+     */
+    private void updateBatchRows(int rowCount) {
+        if (valueWidths == null) {
+            valueWidths = new int[vectors.size()];
+        }
+
+        long rowBytes = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            final ValueVector v = vectors.get(i);
+            if (rowCount == 0) {
+                if (lobVectors.contains(v)) {
+                    valueWidths[i] = JdbcLobCopier.estimateWidth(config);
+                } else if (v instanceof VariableWidthVector) {
+                    valueWidths[i] = widthHints.get(i) > 0 ? widthHints.get(i) : VARIABLE_WIDTH_ESTIMATE;
+                } else {
+                    valueWidths[i] = FIXED_WIDTH_ESTIMATE;
+                }
+                rowBytes += valueWidths[i];
+            } else {
+                if (v instanceof VariableWidthVector) {
+                    final int dataBytes = ((VariableWidthVector) v).getCurrentSizeInBytes();
+                    valueWidths[i] = Math.max(1, (dataBytes + rowCount - 1) / rowCount);
+                }
+                rowBytes += (v.getBufferSize() + rowCount - 1) / rowCount;
+            }
+        }
+
+        batchRows = (int) Math.max(1, Math.min(MAX_BATCH_ROWS, targetBatchSize / Math.max(rowBytes, 1)));
+    }
+
     @Override
     public void close() throws Exception {
-        AutoCloseables.close(resultSet, statement, connection);
+        if (watchdog != null && !exhausted) {
+            // Запрос прерван или LIMIT уже выполнен: без отмены драйвер дочитывает оставшиеся строки при закрытии
+            watchdog.cancel();
+        }
+        try {
+            AutoCloseables.close(watchdog, prefetcher, resultSet, statement, connection);
+        } finally {
+            if (watchdog != null && watchdog.getCancelNanos() != 0) {
+                final long cancelToClose = System.nanoTime() - watchdog.getCancelNanos();
+                operatorContext.getStats().setLongStat(JdbcStatementWatchdog.Metric.CANCEL_TO_CLOSE_NANOS, cancelToClose);
+                logger.debug("Connection of cancelled query returned in {} ms", TimeUnit.NANOSECONDS.toMillis(cancelToClose));
+            }
+        }
     }
 
-    private abstract static class Copier<T extends ValueVector.Mutator> {
+    /**
+     * Copies all columns of the current row, implemented by classes generated in {@link JdbcRowCopierFactory}.
+     */
+    public interface RowCopier {
+        void setup(ResultSet resultSet, Object[] columns);
+
+        void copy(int index) throws SQLException;
+    }
+
+    public abstract static class Copier<T extends ValueVector.Mutator> {
         final int columnIndex;
         final ResultSet result;
         final T mutator;
@@ -368,7 +745,30 @@ public class JdbcRecordReader extends AbstractRecordReader {
             this.mutator = mutator;
         }
 
-        abstract void copy(int index) throws SQLException;
+        public abstract void copy(int index) throws SQLException;
+
+        /**
+         * Reads the value of the current row into the stage on the prefetch thread, see {@link JdbcRowPrefetcher}.
+         *
+         * @return whether the value is null
+         */
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be used with prefetch");
+        }
+
+        /**
+         * Writes the value staged by {@link #stage} into the vector on the fragment thread.
+         */
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be used with prefetch");
+        }
+
+        /**
+         * @return how the generated row copier copies the column inline, null to call {@link #copy(int)}
+         */
+        JdbcRowCopierFactory.Inline inline() {
+            return null;
+        }
     }
 
     private static class IntCopier extends Copier<NullableIntVector.Mutator> {
@@ -377,12 +777,78 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             mutator.setSafe(index, result.getInt(columnIndex));
             if (result.wasNull()) {
                 mutator.setNull(index);
             }
         }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setLong(row, result.getInt(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (int) stage.getLong(row));
+        }
+
+        @Override
+        JdbcRowCopierFactory.Inline inline() {
+            return JdbcRowCopierFactory.Inline.INT;
+        }
+    }
+
+    private static class SmallIntCopier extends Copier<NullableSmallIntVector.Mutator> {
+        SmallIntCopier(int offset, ResultSet set, NullableSmallIntVector.Mutator mutator) {
+            super(offset, set, mutator);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            mutator.setSafe(index, result.getShort(columnIndex));
+            if (result.wasNull()) {
+                mutator.setNull(index);
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setLong(row, result.getShort(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (short) stage.getLong(row));
+        }
+    }
+
+    private static class TinyIntCopier extends Copier<NullableTinyIntVector.Mutator> {
+        TinyIntCopier(int offset, ResultSet set, NullableTinyIntVector.Mutator mutator) {
+            super(offset, set, mutator);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            mutator.setSafe(index, result.getByte(columnIndex));
+            if (result.wasNull()) {
+                mutator.setNull(index);
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setLong(row, result.getByte(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (byte) stage.getLong(row));
+        }
     }
 
     private static class BigIntCopier extends Copier<NullableBigIntVector.Mutator> {
@@ -391,13 +857,28 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             mutator.setSafe(index, result.getLong(columnIndex));
             if (result.wasNull()) {
                 mutator.setNull(index);
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setLong(row, result.getLong(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getLong(row));
+        }
+
+        @Override
+        JdbcRowCopierFactory.Inline inline() {
+            return JdbcRowCopierFactory.Inline.BIGINT;
+        }
     }
 
     private static class Float4Copier extends Copier<NullableFloat4Vector.Mutator> {
@@ -407,13 +888,28 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             mutator.setSafe(index, result.getFloat(columnIndex));
             if (result.wasNull()) {
                 mutator.setNull(index);
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setDouble(row, result.getFloat(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (float) stage.getDouble(row));
+        }
+
+        @Override
+        JdbcRowCopierFactory.Inline inline() {
+            return JdbcRowCopierFactory.Inline.FLOAT4;
+        }
     }
 
 
@@ -424,7 +920,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             mutator.setSafe(index, result.getDouble(columnIndex));
             if (result.wasNull()) {
                 mutator.setNull(index);
@@ -432,6 +928,21 @@ public class JdbcRecordReader extends AbstractRecordReader {
 
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setDouble(row, result.getDouble(columnIndex));
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getDouble(row));
+        }
+
+        @Override
+        JdbcRowCopierFactory.Inline inline() {
+            return JdbcRowCopierFactory.Inline.FLOAT8;
+        }
     }
 
     private static class VarDecimalCopier extends Copier<NullableVarDecimalVector.Mutator> {
@@ -444,30 +955,462 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             BigDecimal decimal = result.getBigDecimal(columnIndex);
             if (decimal != null) {
                 mutator.setSafe(index, decimal.setScale(scale, RoundingMode.HALF_UP));
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final BigDecimal decimal = result.getBigDecimal(columnIndex);
+            if (decimal == null) {
+                return true;
+            }
+            final byte[] unscaled = decimal.setScale(scale, RoundingMode.HALF_UP).unscaledValue().toByteArray();
+            stage.setBytes(row, unscaled, 0, unscaled.length);
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+    }
+
+    /**
+     * Writes decimals of precision up to 18 as unscaled longs, without {@link BigDecimal} per value.
+     * The unscaled value is parsed from the text of the value if the driver returns it from {@code getBytes},
+     * otherwise it is computed from {@code getDouble}, which is exact up to precision 15.
+     */
+    private static class LongDecimalCopier extends Copier<NullableVarDecimalVector.Mutator> {
+
+        static final int MAX_PRECISION = 18;
+        static final int MAX_DOUBLE_PRECISION = 15;
+
+        private final int scale;
+        private final boolean raw;
+        private final byte[] buffer = new byte[8];
+        // Значение, прочитанное read(): unscaled или, если оно не помещается в long, fallback
+        private long unscaled;
+        private BigDecimal fallback;
+
+        LongDecimalCopier(int columnIndex, MajorType type, boolean raw, ResultSet result,
+                          NullableVarDecimalVector.Mutator mutator) {
+            super(columnIndex, result, mutator);
+            this.scale = type.getScale();
+            this.raw = raw;
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            if (!read()) {
+                return;
+            }
+            if (fallback != null) {
+                mutator.setSafe(index, fallback);
+            } else {
+                final int length = encodeUnscaled();
+                mutator.setSafe(index, buffer, 8 - length, length);
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            if (!read()) {
+                return true;
+            }
+            if (fallback != null) {
+                final byte[] bytes = fallback.unscaledValue().toByteArray();
+                stage.setBytes(row, bytes, 0, bytes.length);
+            } else {
+                final int length = encodeUnscaled();
+                stage.setBytes(row, buffer, 8 - length, length);
+            }
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+        /**
+         * Reads the value of the current row into {@link #unscaled}, or into {@link #fallback} if it does not fit.
+         *
+         * @return false if the value is null
+         */
+        private boolean read() throws SQLException {
+            fallback = null;
+            if (raw) {
+                final byte[] text = result.getBytes(columnIndex);
+                if (text == null) {
+                    return false;
+                }
+                unscaled = DecimalText.parseUnscaled(text, text.length, scale);
+                if (unscaled == DecimalText.INVALID) {
+                    try {
+                        fallback = new BigDecimal(new String(text, Charsets.US_ASCII)).setScale(scale, RoundingMode.HALF_UP);
+                    } catch (NumberFormatException e) {
+                        // PostgreSQL numeric может быть NaN
+                        throw notDecimal(new String(text, Charsets.US_ASCII));
+                    }
+                }
+            } else {
+                final double value = result.getDouble(columnIndex);
+                if (result.wasNull()) {
+                    return false;
+                }
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw notDecimal(String.valueOf(value));
+                }
+                unscaled = toUnscaled(value);
+            }
+            return true;
+        }
+
+        /**
+         * Rounds the value half up to the scale without {@link BigDecimal}. Values of precision up to 15 are
+         * exact in a double, so the scaled value is an integer up to the error of the multiplication.
+         */
+        private long toUnscaled(double value) {
+            final double scaled = Math.abs(value) * DecimalText.POWERS_OF_TEN[scale];
+            if (scaled >= DecimalText.POWERS_OF_TEN[MAX_DOUBLE_PRECISION]) {
+                // Значение не помещается в точность колонки
+                return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValue();
+            }
+            // Math.round округляет половину к большему, для отрицательных это не HALF_UP
+            final double floor = Math.floor(scaled);
+            final long rounded = (long) (scaled - floor >= 0.5 ? Math.ceil(scaled) : floor);
+            return value < 0 ? -rounded : rounded;
+        }
+
+        /**
+         * Writes {@link #unscaled} into the end of the buffer like {@link java.math.BigInteger#toByteArray()}:
+         * minimal number of bytes in two's complement.
+         *
+         * @return number of bytes
+         */
+        private int encodeUnscaled() {
+            int length = 8;
+            while (length > 1) {
+                final long sign = unscaled >> (8 * (length - 1) - 1);
+                if (sign != 0 && sign != -1) {
+                    break;
+                }
+                length--;
+            }
+            for (int i = 0; i < 8; i++) {
+                buffer[7 - i] = (byte) (unscaled >> (8 * i));
+            }
+            return length;
+        }
+
+        private SQLException notDecimal(String value) {
+            return new SQLException("Value " + value + " of column " + columnIndex + " can't be read as DECIMAL");
+        }
+    }
+
+    /**
+     * Converts decimals to doubles from the text of the value. Values of up to 15 digits are computed
+     * from the unscaled long, other values are parsed by {@link Double#parseDouble(String)}.
+     */
+    private static class RawDecimalFloat8Copier extends Copier<NullableFloat8Vector.Mutator> {
+
+        RawDecimalFloat8Copier(int columnIndex, ResultSet result, NullableFloat8Vector.Mutator mutator) {
+            super(columnIndex, result, mutator);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            final byte[] text = result.getBytes(columnIndex);
+            if (text != null) {
+                mutator.setSafe(index, toDouble(text));
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final byte[] text = result.getBytes(columnIndex);
+            if (text == null) {
+                return true;
+            }
+            stage.setDouble(row, toDouble(text));
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getDouble(row));
+        }
+
+        private static double toDouble(byte[] text) {
+            int fraction = 0;
+            for (int i = text.length - 1; i >= 0; i--) {
+                if (text[i] == '.') {
+                    fraction = text.length - i - 1;
+                    break;
+                }
+            }
+
+            final long unscaled = fraction <= LongDecimalCopier.MAX_PRECISION
+                    ? DecimalText.parseUnscaled(text, text.length, fraction)
+                    : DecimalText.INVALID;
+            if (unscaled != DecimalText.INVALID && Math.abs(unscaled) < DecimalText.MAX_EXACT_DOUBLE) {
+                return unscaled / DecimalText.POWERS_OF_TEN[fraction];
+            }
+            return Double.parseDouble(new String(text, Charsets.US_ASCII));
+        }
+    }
+
+    private static final class DecimalText {
+
+        static final long INVALID = Long.MIN_VALUE;
+        static final long MAX_EXACT_DOUBLE = 1L << 53;
+        static final double[] POWERS_OF_TEN = new double[19];
+        private static final long[] LONG_POWERS_OF_TEN = new long[19];
+
+        static {
+            long power = 1;
+            for (int i = 0; i < LONG_POWERS_OF_TEN.length; i++) {
+                LONG_POWERS_OF_TEN[i] = power;
+                POWERS_OF_TEN[i] = power;
+                power *= 10;
+            }
+        }
+
+        private DecimalText() {
+        }
+
+        /**
+         * Parses a plain decimal number (no exponent) into an unscaled value of the given scale, rounding half up.
+         *
+         * @return unscaled value, or {@link #INVALID} if the text is not a plain number or does not fit a long
+         */
+        static long parseUnscaled(byte[] text, int length, int scale) {
+            int i = 0;
+            boolean negative = false;
+            if (length > 0 && (text[0] == '-' || text[0] == '+')) {
+                negative = text[0] == '-';
+                i++;
+            }
+
+            long value = 0;
+            int digits = 0;
+            int fraction = -1;
+            int dropped = -1;
+            for (; i < length; i++) {
+                final byte b = text[i];
+                if (b == '.' && fraction < 0) {
+                    fraction = 0;
+                    continue;
+                }
+                if (b < '0' || b > '9') {
+                    return INVALID;
+                }
+                digits++;
+                if (fraction == scale) {
+                    if (dropped < 0) {
+                        dropped = b - '0';
+                    }
+                    continue;
+                }
+                if (value > (Long.MAX_VALUE - 9) / 10) {
+                    return INVALID;
+                }
+                value = value * 10 + (b - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            }
+
+            if (digits == 0) {
+                return INVALID;
+            }
+
+            final long multiplier = LONG_POWERS_OF_TEN[scale - Math.max(fraction, 0)];
+            if (value > Long.MAX_VALUE / multiplier) {
+                return INVALID;
+            }
+            value *= multiplier;
+            if (dropped >= 5) {
+                value++;
+            }
+            return negative ? -value : value;
+        }
     }
 
     private static class VarCharCopier extends Copier<NullableVarCharVector.Mutator> {
 
+        private final Utf8Encoder encoder = new Utf8Encoder();
+
         VarCharCopier(int columnIndex, ResultSet result, NullableVarCharVector.Mutator mutator) {
             super(columnIndex, result, mutator);
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             String val = result.getString(columnIndex);
             if (val != null) {
-                byte[] record = val.getBytes(Charsets.UTF_8);
+                ByteBuffer record = encoder.encode(val);
+                mutator.setSafe(index, record, 0, record.limit());
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final String val = result.getString(columnIndex);
+            if (val == null) {
+                return true;
+            }
+            stage.setBytes(row, encoder.encode(val));
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+    }
+
+    /**
+     * Copies bytes of a text value as the driver received them. Only for drivers that return text in UTF-8
+     * from {@code getBytes}, so no string is created for a value.
+     */
+    private static class RawVarCharCopier extends Copier<NullableVarCharVector.Mutator> {
+
+        RawVarCharCopier(int columnIndex, ResultSet result, NullableVarCharVector.Mutator mutator) {
+            super(columnIndex, result, mutator);
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            byte[] record = result.getBytes(columnIndex);
+            if (record != null) {
                 mutator.setSafe(index, record, 0, record.length);
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final byte[] record = result.getBytes(columnIndex);
+            if (record == null) {
+                return true;
+            }
+            stage.setBytes(row, record, 0, record.length);
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+    }
+
+    /**
+     * Copies CHAR values without the trailing spaces they are padded with.
+     */
+    private static class TrimmedVarCharCopier extends Copier<NullableVarCharVector.Mutator> {
+
+        private final boolean rawUtf8;
+        private final Utf8Encoder encoder = new Utf8Encoder();
+
+        TrimmedVarCharCopier(int columnIndex, ResultSet result, boolean rawUtf8, NullableVarCharVector.Mutator mutator) {
+            super(columnIndex, result, mutator);
+            this.rawUtf8 = rawUtf8;
+        }
+
+        @Override
+        public void copy(int index) throws SQLException {
+            if (rawUtf8) {
+                byte[] record = result.getBytes(columnIndex);
+                if (record != null) {
+                    mutator.setSafe(index, record, 0, trimmedLength(record));
+                }
+            } else {
+                String val = result.getString(columnIndex);
+                if (val != null) {
+                    ByteBuffer record = encoder.encode(val, trimmedLength(val));
+                    mutator.setSafe(index, record, 0, record.limit());
+                }
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            if (rawUtf8) {
+                final byte[] record = result.getBytes(columnIndex);
+                if (record == null) {
+                    return true;
+                }
+                stage.setBytes(row, record, 0, trimmedLength(record));
+            } else {
+                final String val = result.getString(columnIndex);
+                if (val == null) {
+                    return true;
+                }
+                stage.setBytes(row, encoder.encode(val, trimmedLength(val)));
+            }
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+        // Байт пробела не встречается внутри многобайтовых символов UTF-8
+        private static int trimmedLength(byte[] record) {
+            int length = record.length;
+            while (length > 0 && record[length - 1] == ' ') {
+                length--;
+            }
+            return length;
+        }
+
+        private static int trimmedLength(String val) {
+            int length = val.length();
+            while (length > 0 && val.charAt(length - 1) == ' ') {
+                length--;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Encodes strings to UTF-8 into a reusable buffer. Malformed characters are replaced like in
+     * {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    private static final class Utf8Encoder {
+
+        private final CharsetEncoder encoder = Charsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        ByteBuffer encode(String val) {
+            return encode(val, val.length());
+        }
+
+        /**
+         * Encodes the first {@code length} characters of the string.
+         */
+        ByteBuffer encode(String val, int length) {
+            final int maxBytes = (int) (length * (double) encoder.maxBytesPerChar());
+            if (buffer.capacity() < maxBytes) {
+                buffer = ByteBuffer.allocate(Math.max(maxBytes, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(val, 0, length), buffer, true);
+            encoder.flush(buffer);
+            buffer.flip();
+            return buffer;
+        }
     }
 
     private static class Object2VarCharCopier extends Copier<NullableVarCharVector.Mutator> {
@@ -481,12 +1424,37 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
 
+        private final Utf8Encoder encoder = new Utf8Encoder();
+
         Object2VarCharCopier(int columnIndex, ResultSet result, NullableVarCharVector.Mutator mutator) {
             super(columnIndex, result, mutator);
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
+            String val = read();
+            if (val != null) {
+                ByteBuffer record = encoder.encode(val);
+                mutator.setSafe(index, record, 0, record.limit());
+            }
+        }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final String val = read();
+            if (val == null) {
+                return true;
+            }
+            stage.setBytes(row, encoder.encode(val));
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
+        private String read() throws SQLException {
             Object object = result.getObject(columnIndex);
             String val = Objects.toString(object, null);
             if (object instanceof Array) {
@@ -495,27 +1463,75 @@ public class JdbcRecordReader extends AbstractRecordReader {
             if (object instanceof SQLXML) {
                 ((SQLXML) object).free();
             }
-            if (val != null) {
-                byte[] record = val.getBytes(Charsets.UTF_8);
-                mutator.setSafe(index, record, 0, record.length);
-            }
+            return val;
         }
     }
 
-    private static class VarBinaryCopier extends Copier<NullableVarBinaryVector.Mutator> {
+    /**
+     * Reads binary values from {@code getBinaryStream} into a reusable buffer, so no array is allocated per value
+     * by drivers that stream from their row buffer. The buffer is sized up front when the stream reports
+     * its length.
+     */
+    static class VarBinaryCopier extends Copier<NullableVarBinaryVector.Mutator> {
+
+        private static final int INITIAL_BUFFER_SIZE = 256;
+        // Буфер большего размера не удерживается после копирования значения
+        private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
 
         VarBinaryCopier(int columnIndex, ResultSet result, NullableVarBinaryVector.Mutator mutator) {
             super(columnIndex, result, mutator);
         }
 
         @Override
-        void copy(int index) throws SQLException {
-            byte[] record = result.getBytes(columnIndex);
-            if (record != null) {
-                mutator.setSafe(index, record, 0, record.length);
+        public void copy(int index) throws SQLException {
+            try (InputStream in = result.getBinaryStream(columnIndex)) {
+                if (in == null) {
+                    return;
+                }
+                final int available = in.available();
+                if (available > buffer.length) {
+                    buffer = new byte[available];
+                }
+                int length = 0;
+                while (true) {
+                    if (length == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    final int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        break;
+                    }
+                    length += read;
+                }
+                mutator.setSafe(index, buffer, 0, length);
+                if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                    buffer = new byte[INITIAL_BUFFER_SIZE];
+                }
+            } catch (IOException e) {
+                throw new SQLException("Failed to read binary value", e);
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            try (InputStream in = result.getBinaryStream(columnIndex)) {
+                if (in == null) {
+                    return true;
+                }
+                stage.setBytes(row, in);
+                return false;
+            } catch (IOException e) {
+                throw new SQLException("Failed to read binary value", e);
+            }
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getBytes(), stage.getStart(row), stage.getLength(row));
+        }
+
     }
 
     private static class DateCopier extends Copier<NullableDateVector.Mutator> {
@@ -527,13 +1543,28 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             Date date = result.getDate(columnIndex, calendar);
             if (date != null) {
                 mutator.setSafe(index, date.getTime());
             }
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final Date date = result.getDate(columnIndex, calendar);
+            if (date == null) {
+                return true;
+            }
+            stage.setLong(row, date.getTime());
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getLong(row));
+        }
+
     }
 
     private static class TimeCopier extends Copier<NullableTimeVector.Mutator> {
@@ -545,7 +1576,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             Time time = result.getTime(columnIndex, calendar);
             if (time != null) {
                 mutator.setSafe(index, (int) time.getTime());
@@ -553,6 +1584,21 @@ public class JdbcRecordReader extends AbstractRecordReader {
 
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final Time time = result.getTime(columnIndex, calendar);
+            if (time == null) {
+                return true;
+            }
+            stage.setLong(row, time.getTime());
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (int) stage.getLong(row));
+        }
+
     }
 
 
@@ -565,7 +1611,7 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             Timestamp stamp = result.getTimestamp(columnIndex, calendar);
             if (stamp != null) {
                 mutator.setSafe(index, stamp.getTime());
@@ -573,6 +1619,21 @@ public class JdbcRecordReader extends AbstractRecordReader {
 
         }
 
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            final Timestamp stamp = result.getTimestamp(columnIndex, calendar);
+            if (stamp == null) {
+                return true;
+            }
+            stage.setLong(row, stamp.getTime());
+            return false;
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, stage.getLong(row));
+        }
+
     }
 
     private static class BitCopier extends Copier<NullableBitVector.Mutator> {
@@ -582,12 +1643,28 @@ public class JdbcRecordReader extends AbstractRecordReader {
         }
 
         @Override
-        void copy(int index) throws SQLException {
+        public void copy(int index) throws SQLException {
             mutator.setSafe(index, result.getBoolean(columnIndex) ? 1 : 0);
             if (result.wasNull()) {
                 mutator.setNull(index);
             }
         }
+
+        @Override
+        boolean stage(JdbcRowPrefetcher.Stage stage, int row) throws SQLException {
+            stage.setLong(row, result.getBoolean(columnIndex) ? 1 : 0);
+            return result.wasNull();
+        }
+
+        @Override
+        void unstage(JdbcRowPrefetcher.Stage stage, int row, int index) {
+            mutator.setSafe(index, (int) stage.getLong(row));
+        }
+
+        @Override
+        JdbcRowCopierFactory.Inline inline() {
+            return JdbcRowCopierFactory.Inline.BIT;
+        }
     }
 
     private final static class TypeInfo {
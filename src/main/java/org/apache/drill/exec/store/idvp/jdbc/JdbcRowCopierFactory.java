@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.drill.exec.vector.NullableBigIntVector;
+import org.apache.drill.exec.vector.NullableBitVector;
+import org.apache.drill.exec.vector.NullableFloat4Vector;
+import org.apache.drill.exec.vector.NullableFloat8Vector;
+import org.apache.drill.exec.vector.NullableIntVector;
+import org.codehaus.janino.SimpleCompiler;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a row copier for a list of column copiers. The generated class copies all columns of a row
+ * in one method: primitive columns are read and written inline, other columns are copied by a call to
+ * their copier from a separate call site, so every call site sees a single copier class.
+ * Classes are cached by the kinds of the columns.
+ */
+final class JdbcRowCopierFactory {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcRowCopierFactory.class);
+
+    private static final String PACKAGE = "org.apache.drill.exec.store.idvp.jdbc.gen";
+    private static final String COPIER = JdbcRecordReader.Copier.class.getCanonicalName();
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final Cache<String, Class<?>> CLASSES = CacheBuilder.newBuilder()
+            .maximumSize(256)
+            .build();
+
+    /**
+     * Columns copied inline by the generated code.
+     */
+    enum Inline {
+        INT(NullableIntVector.Mutator.class, "rs.getInt(%d)"),
+        BIGINT(NullableBigIntVector.Mutator.class, "rs.getLong(%d)"),
+        FLOAT4(NullableFloat4Vector.Mutator.class, "rs.getFloat(%d)"),
+        FLOAT8(NullableFloat8Vector.Mutator.class, "rs.getDouble(%d)"),
+        BIT(NullableBitVector.Mutator.class, "(rs.getBoolean(%d) ? 1 : 0)");
+
+        private final String mutatorClass;
+        private final String read;
+
+        Inline(Class<?> mutatorClass, String read) {
+            this.mutatorClass = mutatorClass.getCanonicalName();
+            this.read = read;
+        }
+    }
+
+    private JdbcRowCopierFactory() {
+    }
+
+    /**
+     * @return copier of all columns, or null if the class could not be generated
+     */
+    static JdbcRecordReader.RowCopier create(ResultSet resultSet, List<JdbcRecordReader.Copier<?>> copiers) {
+        final StringBuilder signature = new StringBuilder();
+        final Object[] columns = new Object[copiers.size()];
+        for (int i = 0; i < copiers.size(); i++) {
+            final JdbcRecordReader.Copier<?> copier = copiers.get(i);
+            final Inline inline = copier.inline();
+            if (inline != null) {
+                signature.append(inline.name()).append(':').append(copier.columnIndex);
+                columns[i] = copier.mutator;
+            } else {
+                // Класс копировщика входит в ключ: вызов copy в сгенерированном классе остаётся мономорфным
+                signature.append(copier.getClass().getName());
+                columns[i] = copier;
+            }
+            signature.append(',');
+        }
+
+        try {
+            final Class<?> clazz = CLASSES.get(signature.toString(), () -> compile(copiers));
+            final JdbcRecordReader.RowCopier rowCopier = (JdbcRecordReader.RowCopier) clazz.newInstance();
+            rowCopier.setup(resultSet, columns);
+            return rowCopier;
+        } catch (Exception e) {
+            logger.warn("Failed to generate row copier, columns are copied one by one", e);
+            return null;
+        }
+    }
+
+    private static Class<?> compile(List<JdbcRecordReader.Copier<?>> copiers) throws Exception {
+        final String className = "RowCopier" + CLASS_COUNTER.incrementAndGet();
+
+        final StringBuilder fields = new StringBuilder();
+        final StringBuilder setup = new StringBuilder();
+        final StringBuilder copy = new StringBuilder();
+        for (int i = 0; i < copiers.size(); i++) {
+            final JdbcRecordReader.Copier<?> copier = copiers.get(i);
+            final Inline inline = copier.inline();
+            final String type = inline != null ? inline.mutatorClass : COPIER;
+            fields.append(String.format("    private %s c%d;%n", type, i));
+            setup.append(String.format("        c%d = (%s) columns[%d];%n", i, type, i));
+            if (inline != null) {
+                copy.append(String.format("        c%d.setSafe(index, %s);%n", i, String.format(inline.read, copier.columnIndex)));
+                copy.append(String.format("        if (rs.wasNull()) {%n            c%d.setNull(index);%n        }%n", i));
+            } else {
+                copy.append(String.format("        c%d.copy(index);%n", i));
+            }
+        }
+
+        final String source = "package " + PACKAGE + ";\n"
+                + "public final class " + className
+                + " implements " + JdbcRecordReader.RowCopier.class.getCanonicalName() + " {\n"
+                + "    private java.sql.ResultSet rs;\n"
+                + fields
+                + "    public void setup(java.sql.ResultSet rs, Object[] columns) {\n"
+                + "        this.rs = rs;\n"
+                + setup
+                + "    }\n"
+                + "    public void copy(int index) throws java.sql.SQLException {\n"
+                + copy
+                + "    }\n"
+                + "}\n";
+
+        logger.debug("Generated row copier:\n{}", source);
+
+        final SimpleCompiler compiler = new SimpleCompiler();
+        compiler.setParentClassLoader(JdbcRowCopierFactory.class.getClassLoader());
+        compiler.cook(source);
+        return compiler.getClassLoader().loadClass(PACKAGE + "." + className);
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import org.apache.drill.exec.ops.MetricDef;
+import org.apache.drill.exec.ops.OperatorStats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the result set on a dedicated thread. The copiers of the columns stage values of the rows into chunks
+ * (see {@link Stage}), chunks are passed to the fragment thread through a bounded queue and reused after
+ * the copiers have written them into value vectors. So network waits of the fetch thread overlap with vector
+ * writes of the fragment thread.
+ */
+class JdbcRowPrefetcher implements AutoCloseable {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcRowPrefetcher.class);
+
+    private static final int CHUNK_ROWS = 1024;
+    // Не все драйверы прерывают next по cancel, тогда поток не ждём дольше
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Metrics of the JDBC_SCAN operator. Drill has no names registered for this operator, so profiles show
+     * the metrics by their ids.
+     */
+    enum Metric implements MetricDef {
+        PREFETCH_QUEUE_DEPTH,
+        PREFETCH_MAX_QUEUE_DEPTH,
+        PREFETCH_FETCH_NANOS,
+        PREFETCH_PRODUCER_WAIT_NANOS,
+        PREFETCH_CONSUMER_STALL_NANOS;
+
+        @Override
+        public int metricId() {
+            return ordinal();
+        }
+    }
+
+    private final ResultSet resultSet;
+    private final List<JdbcRecordReader.Copier<?>> copiers;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> full;
+    private final Thread thread;
+
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong producerWaitNanos = new AtomicLong();
+    private long consumerStallNanos;
+    private int maxQueueDepth;
+    private int queueDepth;
+
+    private volatile boolean closed;
+    private Chunk current;
+    private int position;
+    private boolean finished;
+
+    /**
+     * @param copiers copiers of the columns, they are used only by this prefetcher after it is created
+     */
+    JdbcRowPrefetcher(ResultSet resultSet, List<JdbcRecordReader.Copier<?>> copiers, int queueSize, String name) {
+        this.resultSet = resultSet;
+        this.copiers = copiers;
+        this.free = new ArrayBlockingQueue<>(queueSize + 1);
+        this.full = new ArrayBlockingQueue<>(queueSize + 1);
+        for (int i = 0; i <= queueSize; i++) {
+            free.add(new Chunk(copiers.size()));
+        }
+        this.thread = new Thread(this::fetch, "jdbc-prefetch-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Writes up to maxRows prefetched rows into the vectors, stops earlier when variable width values
+     * of the written rows take maxBytes.
+     *
+     * @return number of written rows, 0 if result set is exhausted
+     */
+    int next(int maxRows, long maxBytes) throws SQLException {
+        int counter = 0;
+        long bytes = 0;
+        try {
+            while (counter < maxRows && bytes < maxBytes && !finished) {
+                if (current == null) {
+                    queueDepth = full.size();
+                    maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+                    final long start = System.nanoTime();
+                    current = full.take();
+                    consumerStallNanos += System.nanoTime() - start;
+                    position = 0;
+                }
+
+                final int rows = Math.min(current.rows - position, maxRows - counter);
+                int written = 0;
+                while (written < rows && bytes < maxBytes) {
+                    final int row = position + written;
+                    for (int c = 0; c < copiers.size(); c++) {
+                        if (!current.nulls[c][row]) {
+                            copiers.get(c).unstage(current.stages[c], row, counter + written);
+                            bytes += current.stages[c].getLength(row);
+                        }
+                    }
+                    written++;
+                }
+                counter += written;
+                position += written;
+
+                if (position == current.rows) {
+                    final Chunk chunk = current;
+                    current = null;
+                    if (chunk.error != null) {
+                        throw chunk.error;
+                    }
+                    finished = chunk.last;
+                    chunk.reset();
+                    free.add(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for prefetched rows", e);
+        }
+        return counter;
+    }
+
+    void updateStats(OperatorStats stats) {
+        stats.setLongStat(Metric.PREFETCH_QUEUE_DEPTH, queueDepth);
+        stats.setLongStat(Metric.PREFETCH_MAX_QUEUE_DEPTH, maxQueueDepth);
+        stats.setLongStat(Metric.PREFETCH_FETCH_NANOS, fetchNanos.get());
+        stats.setLongStat(Metric.PREFETCH_PRODUCER_WAIT_NANOS, producerWaitNanos.get());
+        stats.setLongStat(Metric.PREFETCH_CONSUMER_STALL_NANOS, consumerStallNanos);
+    }
+
+    private void fetch() {
+        try {
+            boolean last = false;
+            while (!last && !closed) {
+                long start = System.nanoTime();
+                final Chunk chunk = free.take();
+                producerWaitNanos.addAndGet(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try {
+                    while (chunk.rows < CHUNK_ROWS) {
+                        if (closed || !resultSet.next()) {
+                            last = true;
+                            break;
+                        }
+                        for (int c = 0; c < copiers.size(); c++) {
+                            chunk.nulls[c][chunk.rows] = copiers.get(c).stage(chunk.stages[c], chunk.rows);
+                        }
+                        chunk.rows++;
+                    }
+                } catch (SQLException e) {
+                    chunk.error = e;
+                    last = true;
+                }
+                fetchNanos.addAndGet(System.nanoTime() - start);
+
+                chunk.last = last;
+                full.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Prefetch thread interrupted");
+        } catch (RuntimeException e) {
+            if (!closed) {
+                logger.error("Prefetch thread failed", e);
+                final Chunk chunk = new Chunk(copiers.size());
+                chunk.error = new SQLException(e);
+                chunk.last = true;
+                full.offer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Stops the fetch thread. The statement is cancelled first, so the thread does not stay in {@code next}
+     * of the driver, then the thread is awaited: the result set is closed by the caller and must not be used
+     * by the thread after that. If the driver does not return from {@code next} on cancel, the thread is left
+     * behind after a timeout, so the fragment is not blocked: it stops as soon as the driver returns.
+     */
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        if (thread.isAlive()) {
+            try {
+                resultSet.getStatement().cancel();
+            } catch (SQLException | RuntimeException e) {
+                logger.debug("Failed to cancel statement of the prefetch thread", e);
+            }
+        }
+        thread.interrupt();
+        thread.join(CLOSE_TIMEOUT_MILLIS);
+        if (thread.isAlive()) {
+            logger.warn("Prefetch thread {} did not stop in {} ms after the statement was cancelled, it is left behind",
+                    thread.getName(), CLOSE_TIMEOUT_MILLIS);
+        }
+    }
+
+    private static final class Chunk {
+        private final Stage[] stages;
+        private final boolean[][] nulls;
+        private int rows;
+        private boolean last;
+        private SQLException error;
+
+        Chunk(int columnCount) {
+            stages = new Stage[columnCount];
+            nulls = new boolean[columnCount][];
+            for (int c = 0; c < columnCount; c++) {
+                stages[c] = new Stage(CHUNK_ROWS);
+                nulls[c] = new boolean[CHUNK_ROWS];
+            }
+        }
+
+        void reset() {
+            rows = 0;
+            last = false;
+            error = null;
+            for (Stage stage : stages) {
+                stage.reset();
+            }
+        }
+    }
+
+    /**
+     * Values of one column of a chunk, staged by {@link JdbcRecordReader.Copier#stage} on the fetch thread.
+     * Fixed width values are kept as longs, variable width values are appended to a byte buffer which is reused
+     * by the following chunks, so no array is allocated per value.
+     */
+    static final class Stage {
+
+        private static final int INITIAL_BYTES = 4096;
+        // Буфер большего размера не удерживается для следующей порции
+        private static final int MAX_RETAINED_BYTES = 16 << 20;
+
+        private final long[] values;
+        private final int[] lengths;
+        private byte[] bytes = new byte[INITIAL_BYTES];
+        private int size;
+
+        Stage(int rows) {
+            values = new long[rows];
+            lengths = new int[rows];
+        }
+
+        void setLong(int row, long value) {
+            values[row] = value;
+        }
+
+        long getLong(int row) {
+            return values[row];
+        }
+
+        void setDouble(int row, double value) {
+            values[row] = Double.doubleToRawLongBits(value);
+        }
+
+        double getDouble(int row) {
+            return Double.longBitsToDouble(values[row]);
+        }
+
+        void setBytes(int row, byte[] value, int start, int length) {
+            ensureCapacity(length);
+            System.arraycopy(value, start, bytes, size, length);
+            append(row, length);
+        }
+
+        void setBytes(int row, ByteBuffer value) {
+            final int length = value.remaining();
+            ensureCapacity(length);
+            value.get(bytes, size, length);
+            append(row, length);
+        }
+
+        /**
+         * Reads the stream to the end as the value of the row.
+         */
+        void setBytes(int row, InputStream in) throws IOException {
+            int length = 0;
+            while (true) {
+                ensureCapacity(length + 1);
+                final int read = in.read(bytes, size + length, bytes.length - size - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            append(row, length);
+        }
+
+        /**
+         * @return buffer of the variable width values, see {@link #getStart(int)} and {@link #getLength(int)}
+         */
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        int getStart(int row) {
+            return (int) values[row];
+        }
+
+        /**
+         * @return bytes of the variable width value, 0 for fixed width values
+         */
+        int getLength(int row) {
+            return lengths[row];
+        }
+
+        void reset() {
+            size = 0;
+            if (bytes.length > MAX_RETAINED_BYTES) {
+                bytes = new byte[INITIAL_BYTES];
+            }
+        }
+
+        private void append(int row, int length) {
+            values[row] = size;
+            lengths[row] = length;
+            size += length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (bytes.length - size < length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+            }
+        }
+    }
+}
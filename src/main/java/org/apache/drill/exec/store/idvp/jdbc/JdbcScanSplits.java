@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.rex.RexNode;
+
+import java.util.List;
+
+/**
+ * Result of splitting a jdbc scan: one condition per split (conditions do not overlap and together cover all rows
+ * of the table) and the row count of the table, if it was found out while computing the splits.
+ */
+final class JdbcScanSplits {
+
+    static final JdbcScanSplits NONE = new JdbcScanSplits(ImmutableList.of(), -1);
+
+    private final List<RexNode> conditions;
+    private final double rowCount;
+
+    JdbcScanSplits(List<RexNode> conditions, double rowCount) {
+        this.conditions = conditions.size() < 2 ? ImmutableList.of() : ImmutableList.copyOf(conditions);
+        this.rowCount = rowCount;
+    }
+
+    List<RexNode> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * @return row count of the scanned table or negative value if it is unknown
+     */
+    double getRowCount() {
+        return rowCount;
+    }
+}
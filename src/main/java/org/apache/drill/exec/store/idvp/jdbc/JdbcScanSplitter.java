@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import org.apache.calcite.adapter.jdbc.JdbcRules;
+import org.apache.calcite.adapter.jdbc.LazyJdbcSchema;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlIdentifier;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Divides the pushed down query into several queries which can be read in parallel.
+ * Only queries that are a projected and filtered scan of a single table are split: the split condition is placed
+ * right above the table scan, so each query reads its own part of the table.
+ */
+final class JdbcScanSplitter {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcScanSplitter.class);
+
+    private final JdbcStoragePlugin plugin;
+    private final RexBuilder rexBuilder;
+
+    JdbcScanSplitter(JdbcStoragePlugin plugin, RexBuilder rexBuilder) {
+        this.plugin = plugin;
+        this.rexBuilder = rexBuilder;
+    }
+
+    JdbcScanSplits split(RelNode tree) {
+        final SplitTarget target = findTarget(tree);
+        if (target == null) {
+            return JdbcScanSplits.NONE;
+        }
+        try {
+            return target.provider.split(target.scan, target.columns, plugin.getConfig().getSplitCount());
+        } catch (SQLException e) {
+            logger.warn("Failed to compute splits for table {}. Table will be read without splitting",
+                    target.scan.getTable().getQualifiedName(), e);
+            return JdbcScanSplits.NONE;
+        }
+    }
+
+    /**
+     * Returns the number of splits the tree is planned to be read with. Unlike {@link #split(RelNode)}, the database
+     * is not queried, so the actual number may be smaller, e.g. for a small table.
+     *
+     * @return 0 if the tree is not split
+     */
+    int getPlannedSplitCount(RelNode tree) {
+        return findTarget(tree) == null ? 0 : plugin.getConfig().getSplitCount();
+    }
+
+    private SplitTarget findTarget(RelNode tree) {
+        if (plugin.getConfig().getSplitCount() < 2) {
+            return null;
+        }
+
+        final TableScan scan = findSplittableScan(tree);
+        if (scan == null) {
+            return null;
+        }
+
+        final List<String> tableName = scan.getTable().getQualifiedName();
+        final String columnSpec = findSplitColumn(plugin.getConfig().getSplitColumns(), tableName);
+        if (columnSpec == null) {
+            if (plugin.getConfig().isUsePhysicalSplits() && JdbcPhysicalSplitProvider.supports(plugin.getDialect())) {
+                return new SplitTarget(new JdbcPhysicalSplitProvider(plugin, rexBuilder), scan, Collections.emptyList());
+            }
+            return null;
+        }
+
+        final List<RelDataTypeField> columns = new ArrayList<>();
+        for (String columnName : Splitter.on(',').trimResults().omitEmptyStrings().split(columnSpec)) {
+            final RelDataTypeField column = scan.getRowType().getField(columnName, false, false);
+            if (column == null) {
+                logger.warn("Split column {} not found in table {}", columnName, tableName);
+                return null;
+            }
+            columns.add(column);
+        }
+
+        // Ranges are preferred: each split reads only its own part of the key. Hash splits are used for
+        // composite keys and for columns without usable order.
+        final JdbcSplitProvider provider;
+        if (JdbcRangeSplitProvider.supports(columns)) {
+            provider = plugin.getConfig().isUseQuantileSplits()
+                    ? new JdbcQuantileSplitProvider(plugin, rexBuilder)
+                    : new JdbcRangeSplitProvider(plugin, rexBuilder);
+        } else if (JdbcHashSplitProvider.supports(plugin.getDialect())) {
+            provider = new JdbcHashSplitProvider(plugin, rexBuilder);
+        } else {
+            logger.warn("Table {} can't be split by {}: database does not support hash splits", tableName, columnSpec);
+            return null;
+        }
+
+        return new SplitTarget(provider, scan, columns);
+    }
+
+    /**
+     * Returns copy of the tree with the split condition placed above the table scan.
+     */
+    static RelNode applySplit(RelNode tree, RexNode condition) {
+        return tree.accept(new RelShuttleImpl() {
+            @Override
+            public RelNode visit(TableScan scan) {
+                return new JdbcRules.JdbcFilter(scan.getCluster(), scan.getTraitSet(), scan, condition);
+            }
+        });
+    }
+
+    static String getTableName(TableScan scan, SqlDialect dialect) {
+        final SqlIdentifier tableName = LazyJdbcSchema.getRemoteTableName(scan.getTable());
+        if (tableName == null) {
+            throw new IllegalArgumentException("Not a jdbc table: " + scan.getTable().getQualifiedName());
+        }
+        return tableName.toSqlString(dialect).getSql();
+    }
+
+    private static TableScan findSplittableScan(RelNode node) {
+        if (node instanceof TableScan) {
+            return (TableScan) node;
+        } else if (node instanceof Project || node instanceof Filter) {
+            return findSplittableScan(node.getInput(0));
+        }
+        return null;
+    }
+
+    private static String findSplitColumn(Map<String, String> splitColumns, List<String> tableName) {
+        final String simpleName = tableName.get(tableName.size() - 1);
+        final String qualifiedName = Joiner.on('.').join(tableName);
+        for (Map.Entry<String, String> entry : splitColumns.entrySet()) {
+            final String key = entry.getKey();
+            if (key.equalsIgnoreCase(simpleName)
+                    || key.equalsIgnoreCase(qualifiedName)
+                    || qualifiedName.toLowerCase().endsWith("." + key.toLowerCase())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class SplitTarget {
+        private final JdbcSplitProvider provider;
+        private final TableScan scan;
+        private final List<RelDataTypeField> columns;
+
+        SplitTarget(JdbcSplitProvider provider, TableScan scan, List<RelDataTypeField> columns) {
+            this.provider = provider;
+            this.scan = scan;
+            this.columns = columns;
+        }
+    }
+}
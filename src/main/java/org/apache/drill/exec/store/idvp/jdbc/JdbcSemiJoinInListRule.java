@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptRuleOperand;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.logical.LogicalValues;
+import org.apache.calcite.rel.metadata.RelColumnOrigin;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.*;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites an inner join of a table of the plugin with a constant set of keys into a filter with the keys,
+ * which is pushed down with the table: {@code t JOIN (VALUES ...) v ON t.k = v.k} becomes
+ * {@code t WHERE t.k = k1 OR t.k = k2 ...}. Drill plans IN lists longer than {@code planner.in_subquery_threshold}
+ * as such joins, so without the rule the whole table is read and joined in Drill.
+ * Sets larger than {@link JdbcStorageConfig#getSemiJoinInListThreshold()} are left to the join rules.
+ */
+class JdbcSemiJoinInListRule extends RelOptRule {
+
+    private final JdbcStoragePlugin plugin;
+    private final int threshold;
+    private final boolean valuesOnLeft;
+    private final boolean aggregate;
+
+    private JdbcSemiJoinInListRule(JdbcStoragePlugin plugin, boolean valuesOnLeft, boolean aggregate) {
+        super(createOperand(valuesOnLeft, aggregate),
+                "iDVPJdbcSemiJoinInListRule:" + plugin.getName()
+                        + (valuesOnLeft ? ":left" : ":right") + (aggregate ? ":aggregate" : ""));
+        this.plugin = plugin;
+        this.threshold = plugin.getConfig().getSemiJoinInListThreshold();
+        this.valuesOnLeft = valuesOnLeft;
+        this.aggregate = aggregate;
+    }
+
+    static List<RelOptRule> rules(JdbcStoragePlugin plugin) {
+        if (plugin.getConfig().getSemiJoinInListThreshold() <= 0) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.of(
+                new JdbcSemiJoinInListRule(plugin, false, true),
+                new JdbcSemiJoinInListRule(plugin, true, true),
+                new JdbcSemiJoinInListRule(plugin, false, false),
+                new JdbcSemiJoinInListRule(plugin, true, false));
+    }
+
+    private static RelOptRuleOperand createOperand(boolean valuesOnLeft, boolean aggregate) {
+        final RelOptRuleOperand values = aggregate
+                ? operand(LogicalAggregate.class, operand(LogicalValues.class, none()))
+                : operand(LogicalValues.class, none());
+        final RelOptRuleOperand data = operand(RelNode.class, any());
+        return valuesOnLeft
+                ? operand(LogicalJoin.class, values, data)
+                : operand(LogicalJoin.class, data, values);
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        final LogicalJoin join = call.rel(0);
+        if (join.getJoinType() != JoinRelType.INNER) {
+            return;
+        }
+
+        final int valuesSize = aggregate ? 3 : 2;
+        final RelNode keys = call.rel(valuesOnLeft ? 1 : 2);
+        final LogicalValues values = call.rel(valuesOnLeft ? valuesSize - 1 : valuesSize);
+        final RelNode data = call.rel(valuesOnLeft ? valuesSize : 1);
+
+        // Ключи должны быть уникальны, иначе соединение размножает строки
+        final int keyColumn;
+        if (aggregate) {
+            final LogicalAggregate agg = (LogicalAggregate) keys;
+            if (!agg.getAggCallList().isEmpty() || agg.getGroupSets().size() != 1 || agg.getGroupCount() != 1) {
+                return;
+            }
+            keyColumn = agg.getGroupSet().nth(0);
+        } else if (values.getRowType().getFieldCount() == 1) {
+            keyColumn = 0;
+        } else {
+            return;
+        }
+
+        final Set<RexLiteral> literals = new LinkedHashSet<>();
+        for (List<RexLiteral> tuple : values.getTuples()) {
+            final RexLiteral literal = tuple.get(keyColumn);
+            if (literal.isNull()) {
+                // NULL не равен ни одному значению
+                continue;
+            }
+            if (!literals.add(literal) && !aggregate) {
+                return;
+            }
+        }
+        if (literals.isEmpty() || literals.size() > threshold) {
+            return;
+        }
+
+        final int keysCount = keys.getRowType().getFieldCount();
+        final int dataOffset = valuesOnLeft ? keysCount : 0;
+        final int keysOffset = valuesOnLeft ? 0 : data.getRowType().getFieldCount();
+        final RexNode dataKey = getDataKey(join.getCondition(), keysOffset, keysCount, dataOffset,
+                data.getRowType().getFieldCount());
+        if (dataKey == null || !isPluginColumn(call.getMetadataQuery(), data, dataKey)) {
+            return;
+        }
+
+        final RexBuilder rexBuilder = join.getCluster().getRexBuilder();
+        final List<RexNode> equalities = new ArrayList<>(literals.size());
+        for (RexLiteral literal : literals) {
+            equalities.add(rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, dataKey, literal));
+        }
+        final RelNode filter = LogicalFilter.create(data, RexUtil.composeDisjunction(rexBuilder, equalities, false));
+
+        // Значение ключа из VALUES равно значению колонки, поэтому восстанавливаем его из нее
+        final RelDataType keyType = join.getRowType().getFieldList().get(keysOffset).getType();
+        final RexNode keyValue = rexBuilder.ensureType(keyType, dataKey, false);
+        final List<RexNode> projects = new ArrayList<>(join.getRowType().getFieldCount());
+        if (valuesOnLeft) {
+            projects.add(keyValue);
+        }
+        for (int i = 0; i < data.getRowType().getFieldCount(); i++) {
+            projects.add(rexBuilder.makeInputRef(filter, i));
+        }
+        if (!valuesOnLeft) {
+            projects.add(keyValue);
+        }
+
+        call.transformTo(LogicalProject.create(filter, projects, join.getRowType()));
+    }
+
+    /**
+     * Finds the expression of the data side compared with the key in the condition {@code data_expr = key}.
+     *
+     * @return the expression shifted to fields of the data side, or null if the condition is of another form
+     */
+    private static RexNode getDataKey(RexNode condition, int keysOffset, int keysCount, int dataOffset, int dataCount) {
+        if (condition.getKind() != SqlKind.EQUALS || keysCount != 1) {
+            return null;
+        }
+        final List<RexNode> operands = ((RexCall) condition).getOperands();
+        for (int i = 0; i < 2; i++) {
+            final RexNode key = operands.get(i);
+            final RexNode other = operands.get(1 - i);
+            if (key instanceof RexInputRef && ((RexInputRef) key).getIndex() == keysOffset) {
+                final ImmutableBitSet fields = RelOptUtil.InputFinder.bits(other);
+                if (!fields.isEmpty() && fields.nth(0) >= dataOffset && fields.length() <= dataOffset + dataCount) {
+                    return RexUtil.shift(other, -dataOffset);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the key comes from tables of this plugin, the rule must not change plans of other storages.
+     */
+    private boolean isPluginColumn(RelMetadataQuery mq, RelNode data, RexNode dataKey) {
+        for (int field : RelOptUtil.InputFinder.bits(dataKey)) {
+            final Set<RelColumnOrigin> origins = mq.getColumnOrigins(data, field);
+            if (origins == null || origins.isEmpty()) {
+                return false;
+            }
+            for (RelColumnOrigin origin : origins) {
+                final List<String> name = origin.getOriginTable().getQualifiedName();
+                if (name.isEmpty() || !plugin.getName().equalsIgnoreCase(name.get(0))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.adapter.jdbc.JdbcRules;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.List;
+
+/**
+ * Pushes down joins that IN, EXISTS and NOT EXISTS subqueries are decorrelated into, when both sides come from
+ * the same database. The subquery side is grouped by the join keys, so the join returns at most the rows of the
+ * outer query:
+ * <ul>
+ * <li>semi-join: {@code Project(left columns) <- Join(INNER, left, right unique on keys)};</li>
+ * <li>anti-join and semi-join: {@code Filter(right_col IS [NOT] NULL) <- Join(LEFT, left, right unique on keys)}.</li>
+ * </ul>
+ * Such joins are pushed regardless of the transfer estimate of {@link DrillJdbcRuleBase.DrillJdbcJoinRule},
+ * which does not know that the columns of the subquery side are dropped.
+ */
+class JdbcSemiJoinRule extends RelOptRule {
+
+    private final DrillJdbcConvention out;
+    private final boolean filter;
+
+    private JdbcSemiJoinRule(DrillJdbcConvention out, boolean filter) {
+        super(operand(filter ? LogicalFilter.class : LogicalProject.class,
+                operand(LogicalJoin.class, Convention.NONE, any())),
+                "iDVPJdbcSemiJoinRule:" + out.getName() + (filter ? ":filter" : ":project"));
+        this.out = out;
+        this.filter = filter;
+    }
+
+    static List<RelOptRule> rules(DrillJdbcConvention out) {
+        return ImmutableList.of(
+                new JdbcSemiJoinRule(out, false),
+                new JdbcSemiJoinRule(out, true));
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        final RelNode top = call.rel(0);
+        final LogicalJoin join = call.rel(1);
+        if (join.getJoinType() != (filter ? JoinRelType.LEFT : JoinRelType.INNER)
+                || !JdbcStoragePlugin.canJoinOnCondition(join.getCondition(), out.dialect)) {
+            return;
+        }
+
+        // Подзапрос сгруппирован по ключам соединения, иначе соединение размножает строки
+        final JoinInfo joinInfo = JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
+        if (joinInfo.leftKeys.isEmpty()
+                || !Boolean.TRUE.equals(call.getMetadataQuery().areColumnsUnique(join.getRight(), joinInfo.rightSet()))) {
+            return;
+        }
+
+        final int leftCount = join.getLeft().getRowType().getFieldCount();
+        if (filter) {
+            final RexNode condition = ((LogicalFilter) top).getCondition();
+            if (!JdbcExpressionCheck.isOnlyStandardExpressions(condition, out.dialect)
+                    || !testsRightSide(condition, leftCount)) {
+                return;
+            }
+        } else {
+            final List<RexNode> projects = ((LogicalProject) top).getProjects();
+            final ImmutableBitSet fields = RelOptUtil.InputFinder.bits(projects, null);
+            if (fields.length() > leftCount) {
+                return;
+            }
+            for (RexNode project : projects) {
+                if (!JdbcExpressionCheck.isOnlyStandardExpressions(project, out.dialect)) {
+                    return;
+                }
+            }
+        }
+
+        final JdbcRules.JdbcJoin jdbcJoin;
+        try {
+            jdbcJoin = new JdbcRules.JdbcJoin(join.getCluster(),
+                    join.getTraitSet().replace(out),
+                    convert(join.getLeft(), join.getLeft().getTraitSet().replace(out).simplify()),
+                    convert(join.getRight(), join.getRight().getTraitSet().replace(out).simplify()),
+                    join.getCondition(),
+                    join.getVariablesSet(),
+                    join.getJoinType());
+        } catch (InvalidRelException e) {
+            JdbcStoragePlugin.logger.debug(e.toString());
+            return;
+        }
+
+        if (filter) {
+            final LogicalFilter logicalFilter = (LogicalFilter) top;
+            call.transformTo(new JdbcRules.JdbcFilter(top.getCluster(),
+                    top.getTraitSet().replace(out),
+                    jdbcJoin,
+                    logicalFilter.getCondition()));
+        } else {
+            final LogicalProject project = (LogicalProject) top;
+            call.transformTo(new JdbcRules.JdbcProject(top.getCluster(),
+                    top.getTraitSet().replace(out),
+                    jdbcJoin,
+                    project.getProjects(),
+                    project.getRowType()));
+        }
+    }
+
+    /**
+     * Checks that the filter keeps rows with or without a match: {@code right_col IS NULL} or {@code IS NOT NULL}.
+     */
+    private static boolean testsRightSide(RexNode condition, int leftCount) {
+        for (RexNode conjunction : RelOptUtil.conjunctions(condition)) {
+            switch (conjunction.getKind()) {
+                case IS_NULL:
+                case IS_NOT_NULL:
+                    final RexNode operand = ((RexCall) conjunction).getOperands().get(0);
+                    if (operand instanceof RexInputRef && ((RexInputRef) operand).getIndex() >= leftCount) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+}
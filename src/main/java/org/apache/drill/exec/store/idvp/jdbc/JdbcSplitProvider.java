@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataTypeField;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Strategy that divides a scan of a single jdbc table into non-overlapping parts.
+ */
+interface JdbcSplitProvider {
+
+    /**
+     * @param scan       scanned table
+     * @param columns    split columns of the table
+     * @param splitCount requested number of splits
+     * @return conditions over the row type of the scan, one per split
+     */
+    JdbcScanSplits split(TableScan scan, List<RelDataTypeField> columns, int splitCount) throws SQLException;
+}
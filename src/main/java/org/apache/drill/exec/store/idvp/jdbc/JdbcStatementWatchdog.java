@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.idvp.jdbc;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.drill.exec.ops.FragmentContext.ExecutorState;
+import org.apache.drill.exec.ops.MetricDef;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cancels the statement of a reader on the database when its fragment is cancelled. The fragment thread may be
+ * blocked in {@code executeQuery} or {@code next} for a long time, so the state is checked from a shared thread.
+ * The reader also cancels the statement itself when it is closed before the end of the result set, since many
+ * drivers read the remaining rows on close. {@link Statement#cancel()} may block on the network, so the shared
+ * thread only checks the state and cancels on a thread of a cached pool.
+ */
+final class JdbcStatementWatchdog implements AutoCloseable {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JdbcStatementWatchdog.class);
+
+    private static final long CHECK_INTERVAL_MILLIS = 500;
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("jdbc-cancel-watchdog")
+                    .setDaemon(true)
+                    .build());
+
+    private static final ExecutorService CANCEL_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("jdbc-cancel-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * Metric ids follow the ones of {@link JdbcRowPrefetcher.Metric}, both are reported by the same operator.
+     */
+    enum Metric implements MetricDef {
+        CANCEL_TO_CLOSE_NANOS;
+
+        @Override
+        public int metricId() {
+            return JdbcRowPrefetcher.Metric.values().length + ordinal();
+        }
+    }
+
+    private final Statement statement;
+    private final String storagePluginName;
+    private final ScheduledFuture<?> future;
+    private final AtomicBoolean cancelSubmitted = new AtomicBoolean();
+    private volatile long cancelNanos;
+    private boolean closed;
+
+    private JdbcStatementWatchdog(ExecutorState executorState, Statement statement, String storagePluginName) {
+        this.statement = statement;
+        this.storagePluginName = storagePluginName;
+        this.future = EXECUTOR.scheduleWithFixedDelay(() -> {
+            if (!executorState.shouldContinue() && cancelSubmitted.compareAndSet(false, true)) {
+                CANCEL_EXECUTOR.execute(this::cancel);
+            }
+        }, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    static JdbcStatementWatchdog watch(ExecutorState executorState, Statement statement, String storagePluginName) {
+        return new JdbcStatementWatchdog(executorState, statement, storagePluginName);
+    }
+
+    /**
+     * Cancels the statement once.
+     */
+    synchronized void cancel() {
+        if (closed || cancelNanos != 0) {
+            return;
+        }
+        cancelNanos = System.nanoTime();
+        future.cancel(false);
+        try {
+            statement.cancel();
+            logger.debug("Statement of storage plugin {} is cancelled", storagePluginName);
+        } catch (SQLException | RuntimeException e) {
+            logger.debug("Failed to cancel statement of storage plugin {}", storagePluginName, e);
+        }
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the statement was cancelled, 0 if it was not
+     */
+    long getCancelNanos() {
+        return cancelNanos;
+    }
+
+    /**
+     * Stops watching, the statement is not cancelled after this method returns.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        future.cancel(false);
+    }
+}
@@ -29,6 +29,8 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.drill.common.logical.StoragePluginConfig;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
 @SuppressWarnings("WeakerAccess")
@@ -42,6 +44,23 @@ public class JdbcStorageConfig extends StoragePluginConfig {
     private static final boolean DEFAULT_USE_EXTENDED_AGGREGATE_PUSH_DOWN = false;
     private static final int DEFAULT_EVICTION_PERIOD = 20000;
     private static final int DEFAULT_EVICTION_TIMEOUT = 30000;
+    private static final int DEFAULT_SPLIT_COUNT = 1;
+    private static final boolean DEFAULT_USE_QUANTILE_SPLITS = false;
+    private static final int DEFAULT_SPLIT_SAMPLE_PERCENT = 0;
+    private static final int DEFAULT_SPLIT_BOUNDARIES_CACHE_TTL = 600000;
+    private static final boolean DEFAULT_USE_PHYSICAL_SPLITS = false;
+    private static final int DEFAULT_PREFETCH_QUEUE_SIZE = 0;
+    private static final int DEFAULT_TARGET_BATCH_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_FETCH_SIZE = 1024;
+    private static final boolean DEFAULT_USE_ADAPTIVE_FETCH_SIZE = false;
+    private static final boolean DEFAULT_USE_POSTGRES_COPY = false;
+    private static final boolean DEFAULT_USE_COMPLEX_TYPES = false;
+    private static final int DEFAULT_MAX_LOB_SIZE = 16 * 1024 * 1024;
+    private static final boolean DEFAULT_TRUNCATE_LOBS = false;
+    private static final boolean DEFAULT_USE_NARROW_TYPES = false;
+    private static final boolean DEFAULT_USE_BIND_PARAMETERS = false;
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 64;
+    private static final int DEFAULT_SEMI_JOIN_IN_LIST_THRESHOLD = 0;
 
     private final String driver;
     private final String url;
@@ -56,10 +75,47 @@ public class JdbcStorageConfig extends StoragePluginConfig {
     private final boolean useStandardDialect;
     private final boolean useExtendedAggregatePushDown;
 
+    private final int splitCount;
+    private final Map<String, String> splitColumns;
+    private final boolean useQuantileSplits;
+    private final int splitSamplePercent;
+    private final int splitBoundariesCacheTtl;
+    private final boolean usePhysicalSplits;
+    private final int prefetchQueueSize;
+    private final int targetBatchSize;
+    private final int fetchSize;
+    private final boolean useAdaptiveFetchSize;
+    private final boolean usePostgresCopy;
+    private final boolean useComplexTypes;
+    private final int maxLobSize;
+    private final boolean truncateLobs;
+    private final boolean useNarrowTypes;
+    private final boolean useBindParameters;
+    private final int preparedStatementCacheSize;
+    private final int semiJoinInListThreshold;
+
     //Конструктор для Jackson mapper. Создает объект со значениями свойств по-умолчанию
     @SuppressWarnings("unused")
     public JdbcStorageConfig() {
         this(null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
                 null,
                 null,
                 null,
@@ -82,7 +138,25 @@ public class JdbcStorageConfig extends StoragePluginConfig {
             @JsonProperty("connectionEvictionPeriod") Integer connectionEvictionPeriod,
             @JsonProperty("connectionValidationTimeout") Integer connectionValidationTimeout,
             @JsonProperty("useStandardDialect") Boolean useStandardDialect,
-            @JsonProperty("useExtendedAggregatePushDown") Boolean useExtendedAggregatePushDown) {
+            @JsonProperty("useExtendedAggregatePushDown") Boolean useExtendedAggregatePushDown,
+            @JsonProperty("splitCount") Integer splitCount,
+            @JsonProperty("splitColumns") Map<String, String> splitColumns,
+            @JsonProperty("useQuantileSplits") Boolean useQuantileSplits,
+            @JsonProperty("splitSamplePercent") Integer splitSamplePercent,
+            @JsonProperty("splitBoundariesCacheTtl") Integer splitBoundariesCacheTtl,
+            @JsonProperty("usePhysicalSplits") Boolean usePhysicalSplits,
+            @JsonProperty("prefetchQueueSize") Integer prefetchQueueSize,
+            @JsonProperty("targetBatchSize") Integer targetBatchSize,
+            @JsonProperty("fetchSize") Integer fetchSize,
+            @JsonProperty("useAdaptiveFetchSize") Boolean useAdaptiveFetchSize,
+            @JsonProperty("usePostgresCopy") Boolean usePostgresCopy,
+            @JsonProperty("useComplexTypes") Boolean useComplexTypes,
+            @JsonProperty("maxLobSize") Integer maxLobSize,
+            @JsonProperty("truncateLobs") Boolean truncateLobs,
+            @JsonProperty("useNarrowTypes") Boolean useNarrowTypes,
+            @JsonProperty("useBindParameters") Boolean useBindParameters,
+            @JsonProperty("preparedStatementCacheSize") Integer preparedStatementCacheSize,
+            @JsonProperty("semiJoinInListThreshold") Integer semiJoinInListThreshold) {
         super();
         this.driver = driver;
         this.url = url;
@@ -94,6 +168,24 @@ public class JdbcStorageConfig extends StoragePluginConfig {
         this.useExtendedAggregatePushDown = ObjectUtils.firstNonNull(useExtendedAggregatePushDown, DEFAULT_USE_EXTENDED_AGGREGATE_PUSH_DOWN);
         this.connectionEvictionTimeout = ObjectUtils.firstNonNull(connectionEvictionTimeout, DEFAULT_EVICTION_TIMEOUT);
         this.connectionEvictionPeriod = ObjectUtils.firstNonNull(connectionEvictionPeriod, DEFAULT_EVICTION_PERIOD);
+        this.splitCount = ObjectUtils.firstNonNull(splitCount, DEFAULT_SPLIT_COUNT);
+        this.splitColumns = ObjectUtils.firstNonNull(splitColumns, Collections.emptyMap());
+        this.useQuantileSplits = ObjectUtils.firstNonNull(useQuantileSplits, DEFAULT_USE_QUANTILE_SPLITS);
+        this.splitSamplePercent = ObjectUtils.firstNonNull(splitSamplePercent, DEFAULT_SPLIT_SAMPLE_PERCENT);
+        this.splitBoundariesCacheTtl = ObjectUtils.firstNonNull(splitBoundariesCacheTtl, DEFAULT_SPLIT_BOUNDARIES_CACHE_TTL);
+        this.usePhysicalSplits = ObjectUtils.firstNonNull(usePhysicalSplits, DEFAULT_USE_PHYSICAL_SPLITS);
+        this.prefetchQueueSize = ObjectUtils.firstNonNull(prefetchQueueSize, DEFAULT_PREFETCH_QUEUE_SIZE);
+        this.targetBatchSize = ObjectUtils.firstNonNull(targetBatchSize, DEFAULT_TARGET_BATCH_SIZE);
+        this.fetchSize = ObjectUtils.firstNonNull(fetchSize, DEFAULT_FETCH_SIZE);
+        this.useAdaptiveFetchSize = ObjectUtils.firstNonNull(useAdaptiveFetchSize, DEFAULT_USE_ADAPTIVE_FETCH_SIZE);
+        this.usePostgresCopy = ObjectUtils.firstNonNull(usePostgresCopy, DEFAULT_USE_POSTGRES_COPY);
+        this.useComplexTypes = ObjectUtils.firstNonNull(useComplexTypes, DEFAULT_USE_COMPLEX_TYPES);
+        this.maxLobSize = ObjectUtils.firstNonNull(maxLobSize, DEFAULT_MAX_LOB_SIZE);
+        this.truncateLobs = ObjectUtils.firstNonNull(truncateLobs, DEFAULT_TRUNCATE_LOBS);
+        this.useNarrowTypes = ObjectUtils.firstNonNull(useNarrowTypes, DEFAULT_USE_NARROW_TYPES);
+        this.useBindParameters = ObjectUtils.firstNonNull(useBindParameters, DEFAULT_USE_BIND_PARAMETERS);
+        this.preparedStatementCacheSize = ObjectUtils.firstNonNull(preparedStatementCacheSize, DEFAULT_PREPARED_STATEMENT_CACHE_SIZE);
+        this.semiJoinInListThreshold = ObjectUtils.firstNonNull(semiJoinInListThreshold, DEFAULT_SEMI_JOIN_IN_LIST_THRESHOLD);
     }
 
     @JsonProperty
@@ -151,6 +243,9 @@ public class JdbcStorageConfig extends StoragePluginConfig {
         return useStandardDialect;
     }
 
+    /**
+     * Whether aggregate functions besides COUNT, SUM, AVG, MIN and MAX are pushed down when the database has them.
+     */
     @JsonProperty
     @JsonSerialize(using = UseExtendedAggregatePushDownSerializer.class)
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
@@ -158,6 +253,186 @@ public class JdbcStorageConfig extends StoragePluginConfig {
         return useExtendedAggregatePushDown;
     }
 
+    /**
+     * Number of non-overlapping ranges a single-table scan is split into. Values less than 2 disable splitting.
+     */
+    @JsonProperty
+    @JsonSerialize(using = SplitCountSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getSplitCount() {
+        return splitCount;
+    }
+
+    /**
+     * Split column by table name. Key is either a table name or a dot-separated qualified table name.
+     * Value is a numeric or temporal column for range splits, or comma-separated columns of any type for hash splits.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<String, String> getSplitColumns() {
+        return splitColumns;
+    }
+
+    /**
+     * Compute split boundaries from quantiles of the split column instead of equal-width ranges between min and max.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UseQuantileSplitsSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUseQuantileSplits() {
+        return useQuantileSplits;
+    }
+
+    /**
+     * Percent of table rows sampled to compute quantiles (if database supports table sampling). 0 - read all rows.
+     */
+    @JsonProperty
+    @JsonSerialize(using = SplitSamplePercentSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getSplitSamplePercent() {
+        return splitSamplePercent;
+    }
+
+    /**
+     * Time in milliseconds split boundaries of a table are cached for.
+     */
+    @JsonProperty
+    @JsonSerialize(using = SplitBoundariesCacheTtlSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getSplitBoundariesCacheTtl() {
+        return splitBoundariesCacheTtl;
+    }
+
+    /**
+     * Split scans of tables without a split column by physical location of rows (PostgreSQL, Oracle, H2).
+     */
+    @JsonProperty
+    @JsonSerialize(using = UsePhysicalSplitsSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUsePhysicalSplits() {
+        return usePhysicalSplits;
+    }
+
+    /**
+     * Number of row chunks prefetched by a separate thread while the fragment thread fills value vectors. 0 disables prefetching.
+     */
+    @JsonProperty
+    @JsonSerialize(using = PrefetchQueueSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getPrefetchQueueSize() {
+        return prefetchQueueSize;
+    }
+
+    /**
+     * Approximate size in bytes of a batch returned by a scan. Row count of the next batch is computed from the size of rows read so far.
+     */
+    @JsonProperty
+    @JsonSerialize(using = TargetBatchSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getTargetBatchSize() {
+        return targetBatchSize;
+    }
+
+    /**
+     * Number of rows fetched from the database per round trip. On MySQL result sets are streamed row by row unless the url enables {@code useCursorFetch}.
+     */
+    @JsonProperty
+    @JsonSerialize(using = FetchSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Double the fetch size while waiting for the database takes longer than filling value vectors.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UseAdaptiveFetchSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUseAdaptiveFetchSize() {
+        return useAdaptiveFetchSize;
+    }
+
+    /**
+     * Read PostgreSQL queries with binary {@code COPY ... TO STDOUT} instead of a result set. Queries with columns of other types than numbers, booleans, text, bytea, date and time are read with JDBC.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UsePostgresCopySerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUsePostgresCopy() {
+        return usePostgresCopy;
+    }
+
+    /**
+     * Read ARRAY columns into repeated vectors, STRUCT columns and PostgreSQL json/jsonb columns into maps instead of strings.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UseComplexTypesSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUseComplexTypes() {
+        return useComplexTypes;
+    }
+
+    /**
+     * Maximum size in bytes of a single BLOB or CLOB value. Larger values fail the query or are truncated, see {@link #isTruncateLobs()}.
+     */
+    @JsonProperty
+    @JsonSerialize(using = MaxLobSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getMaxLobSize() {
+        return maxLobSize;
+    }
+
+    /**
+     * Truncate BLOB and CLOB values larger than {@link #getMaxLobSize()} instead of failing the query.
+     */
+    @JsonProperty
+    @JsonSerialize(using = TruncateLobsSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isTruncateLobs() {
+        return truncateLobs;
+    }
+
+    /**
+     * Read TINYINT and SMALLINT columns into vectors of the same width, unsigned types into the next wider type, and trim the padding of CHAR values.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UseNarrowTypesSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUseNarrowTypes() {
+        return useNarrowTypes;
+    }
+
+    /**
+     * Pass literals of pushed down filters as parameters of prepared statements, so the database can reuse the plan of a query shape.
+     */
+    @JsonProperty
+    @JsonSerialize(using = UseBindParametersSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public boolean isUseBindParameters() {
+        return useBindParameters;
+    }
+
+    /**
+     * Number of prepared statements cached per connection when bind parameters are used, 0 disables the cache.
+     */
+    @JsonProperty
+    @JsonSerialize(using = PreparedStatementCacheSizeSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getPreparedStatementCacheSize() {
+        return preparedStatementCacheSize;
+    }
+
+    /**
+     * Rewrite a join of a table of this plugin with a constant list of at most this many keys to a filter with the keys, so the database can look them up by index. 0 disables the rewrite.
+     */
+    @JsonProperty
+    @JsonSerialize(using = SemiJoinInListThresholdSerializer.class)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public int getSemiJoinInListThreshold() {
+        return semiJoinInListThreshold;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -168,6 +443,24 @@ public class JdbcStorageConfig extends StoragePluginConfig {
                 connectionEvictionPeriod == that.connectionEvictionPeriod &&
                 connectionValidationTimeout == that.connectionValidationTimeout &&
                 useStandardDialect == that.useStandardDialect &&
+                splitCount == that.splitCount &&
+                useQuantileSplits == that.useQuantileSplits &&
+                splitSamplePercent == that.splitSamplePercent &&
+                splitBoundariesCacheTtl == that.splitBoundariesCacheTtl &&
+                usePhysicalSplits == that.usePhysicalSplits &&
+                prefetchQueueSize == that.prefetchQueueSize &&
+                targetBatchSize == that.targetBatchSize &&
+                fetchSize == that.fetchSize &&
+                useAdaptiveFetchSize == that.useAdaptiveFetchSize &&
+                usePostgresCopy == that.usePostgresCopy &&
+                useComplexTypes == that.useComplexTypes &&
+                maxLobSize == that.maxLobSize &&
+                truncateLobs == that.truncateLobs &&
+                useNarrowTypes == that.useNarrowTypes &&
+                useBindParameters == that.useBindParameters &&
+                preparedStatementCacheSize == that.preparedStatementCacheSize &&
+                semiJoinInListThreshold == that.semiJoinInListThreshold &&
+                Objects.equals(splitColumns, that.splitColumns) &&
                 Objects.equals(driver, that.driver) &&
                 Objects.equals(url, that.url) &&
                 Objects.equals(username, that.username) &&
@@ -184,7 +477,25 @@ public class JdbcStorageConfig extends StoragePluginConfig {
                 connectionEvictionTimeout,
                 connectionEvictionPeriod,
                 connectionValidationTimeout,
-                useStandardDialect);
+                useStandardDialect,
+                splitCount,
+                splitColumns,
+                useQuantileSplits,
+                splitSamplePercent,
+                splitBoundariesCacheTtl,
+                usePhysicalSplits,
+                prefetchQueueSize,
+                targetBatchSize,
+                fetchSize,
+                useAdaptiveFetchSize,
+                usePostgresCopy,
+                useComplexTypes,
+                maxLobSize,
+                truncateLobs,
+                useNarrowTypes,
+                useBindParameters,
+                preparedStatementCacheSize,
+                semiJoinInListThreshold);
     }
 
     private static abstract class IntDefaultsSerializer extends StdSerializer<Integer> {
@@ -255,6 +566,24 @@ public class JdbcStorageConfig extends StoragePluginConfig {
         }
     }
 
+    private final static class SplitCountSerializer extends IntDefaultsSerializer {
+        public SplitCountSerializer() {
+            super(DEFAULT_SPLIT_COUNT);
+        }
+    }
+
+    private final static class SplitSamplePercentSerializer extends IntDefaultsSerializer {
+        public SplitSamplePercentSerializer() {
+            super(DEFAULT_SPLIT_SAMPLE_PERCENT);
+        }
+    }
+
+    private final static class SplitBoundariesCacheTtlSerializer extends IntDefaultsSerializer {
+        public SplitBoundariesCacheTtlSerializer() {
+            super(DEFAULT_SPLIT_BOUNDARIES_CACHE_TTL);
+        }
+    }
+
     private final static class UseStandardDialectSerializer extends BooleanDefaultsSerializer {
         public UseStandardDialectSerializer() {
             super(DEFAULT_USE_STANDARD_DIALECT);
@@ -267,4 +596,88 @@ public class JdbcStorageConfig extends StoragePluginConfig {
         }
     }
 
+    private final static class UseQuantileSplitsSerializer extends BooleanDefaultsSerializer {
+        public UseQuantileSplitsSerializer() {
+            super(DEFAULT_USE_QUANTILE_SPLITS);
+        }
+    }
+
+    private final static class UsePhysicalSplitsSerializer extends BooleanDefaultsSerializer {
+        public UsePhysicalSplitsSerializer() {
+            super(DEFAULT_USE_PHYSICAL_SPLITS);
+        }
+    }
+
+    private final static class PrefetchQueueSizeSerializer extends IntDefaultsSerializer {
+        public PrefetchQueueSizeSerializer() {
+            super(DEFAULT_PREFETCH_QUEUE_SIZE);
+        }
+    }
+
+    private final static class TargetBatchSizeSerializer extends IntDefaultsSerializer {
+        public TargetBatchSizeSerializer() {
+            super(DEFAULT_TARGET_BATCH_SIZE);
+        }
+    }
+
+    private final static class FetchSizeSerializer extends IntDefaultsSerializer {
+        public FetchSizeSerializer() {
+            super(DEFAULT_FETCH_SIZE);
+        }
+    }
+
+    private final static class UseAdaptiveFetchSizeSerializer extends BooleanDefaultsSerializer {
+        public UseAdaptiveFetchSizeSerializer() {
+            super(DEFAULT_USE_ADAPTIVE_FETCH_SIZE);
+        }
+    }
+
+    private final static class UsePostgresCopySerializer extends BooleanDefaultsSerializer {
+        public UsePostgresCopySerializer() {
+            super(DEFAULT_USE_POSTGRES_COPY);
+        }
+    }
+
+    private final static class UseComplexTypesSerializer extends BooleanDefaultsSerializer {
+        public UseComplexTypesSerializer() {
+            super(DEFAULT_USE_COMPLEX_TYPES);
+        }
+    }
+
+    private final static class MaxLobSizeSerializer extends IntDefaultsSerializer {
+        public MaxLobSizeSerializer() {
+            super(DEFAULT_MAX_LOB_SIZE);
+        }
+    }
+
+    private final static class TruncateLobsSerializer extends BooleanDefaultsSerializer {
+        public TruncateLobsSerializer() {
+            super(DEFAULT_TRUNCATE_LOBS);
+        }
+    }
+
+    private final static class UseNarrowTypesSerializer extends BooleanDefaultsSerializer {
+        public UseNarrowTypesSerializer() {
+            super(DEFAULT_USE_NARROW_TYPES);
+        }
+    }
+
+    private final static class UseBindParametersSerializer extends BooleanDefaultsSerializer {
+        public UseBindParametersSerializer() {
+            super(DEFAULT_USE_BIND_PARAMETERS);
+        }
+    }
+
+    private final static class PreparedStatementCacheSizeSerializer extends IntDefaultsSerializer {
+        public PreparedStatementCacheSizeSerializer() {
+            super(DEFAULT_PREPARED_STATEMENT_CACHE_SIZE);
+        }
+    }
+
+    private final static class SemiJoinInListThresholdSerializer extends IntDefaultsSerializer {
+        public SemiJoinInListThresholdSerializer() {
+            super(DEFAULT_SEMI_JOIN_IN_LIST_THRESHOLD);
+        }
+    }
+
 }
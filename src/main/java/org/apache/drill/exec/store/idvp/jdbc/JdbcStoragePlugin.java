@@ -17,6 +17,8 @@
  */
 package org.apache.drill.exec.store.idvp.jdbc;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.calcite.adapter.jdbc.JdbcRules.JdbcJoin;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.plan.RelOptRule;
@@ -39,10 +41,12 @@ import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class JdbcStoragePlugin extends AbstractStoragePlugin {
 
     private final JdbcStorageConfig config;
+    private final Cache<String, JdbcRangeSplitProvider.Boundaries> splitBoundariesCache;
 
     private volatile BasicDataSource source;
     private volatile SqlDialect dialect;
@@ -51,6 +55,11 @@ public class JdbcStoragePlugin extends AbstractStoragePlugin {
     public JdbcStoragePlugin(JdbcStorageConfig config, DrillbitContext context, String name) {
         super(context, name);
         this.config = config;
+        //noinspection UnstableApiUsage
+        this.splitBoundariesCache = CacheBuilder.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(config.getSplitBoundariesCacheTtl(), TimeUnit.MILLISECONDS)
+                .build();
     }
 
 
@@ -104,6 +113,12 @@ public class JdbcStoragePlugin extends AbstractStoragePlugin {
                         source.setNumTestsPerEvictionRun(source.getMaxIdle());
                         source.setTestWhileIdle(true);
                     }
+
+                    if (config.isUseBindParameters() && config.getPreparedStatementCacheSize() > 0) {
+                        // Пул DBCP хранит подготовленные запросы отдельно для каждого соединения
+                        source.setPoolPreparedStatements(true);
+                        source.setMaxOpenPreparedStatements(config.getPreparedStatementCacheSize());
+                    }
                     this.source = source;
                 }
             }
@@ -145,6 +160,13 @@ public class JdbcStoragePlugin extends AbstractStoragePlugin {
         return convention;
     }
 
+    /**
+     * Split boundaries of the tables, so planning does not query the database for them every time.
+     */
+    Cache<String, JdbcRangeSplitProvider.Boundaries> getSplitBoundariesCache() {
+        return splitBoundariesCache;
+    }
+
     @SuppressWarnings("deprecation")
     @Override
     public Set<RelOptRule> getPhysicalOptimizerRules(OptimizerRulesContext context) {
@@ -170,25 +192,37 @@ public class JdbcStoragePlugin extends AbstractStoragePlugin {
      * <p>Corresponds to the capabilities of
      * {@link JdbcJoin#convertConditionToSqlNode}.
      *
-     * @param node Condition
+     * @param node    Condition
+     * @param dialect Dialect the condition is written in
      * @return Whether condition is supported
      */
-    @SuppressWarnings({"unused", "JavadocReference"})
-    private static boolean canJoinOnCondition(RexNode node) {
+    @SuppressWarnings({"JavadocReference", "deprecation"})
+    static boolean canJoinOnCondition(RexNode node, SqlDialect dialect) {
         final List<RexNode> operands;
         switch (node.getKind()) {
             case AND:
             case OR:
                 operands = ((RexCall) node).getOperands();
                 for (RexNode operand : operands) {
-                    if (!canJoinOnCondition(operand)) {
+                    if (!canJoinOnCondition(operand, dialect)) {
                         return false;
                     }
                 }
                 return true;
 
-            case EQUALS:
             case IS_NOT_DISTINCT_FROM:
+                // IS NOT DISTINCT FROM есть не во всех СУБД (нет в MySQL, Oracle, MS SQL Server)
+                switch (dialect.getDatabaseProduct()) {
+                    case POSTGRESQL:
+                    case H2:
+                    case HSQLDB:
+                        break;
+                    default:
+                        return false;
+                }
+                // fall through
+
+            case EQUALS:
             case NOT_EQUALS:
             case GREATER_THAN:
             case GREATER_THAN_OR_EQUAL:
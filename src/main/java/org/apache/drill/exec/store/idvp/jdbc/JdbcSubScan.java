@@ -24,25 +24,39 @@ import org.apache.drill.exec.physical.base.AbstractSubScan;
 import org.apache.drill.exec.proto.beans.CoreOperatorType;
 import org.apache.drill.exec.store.StoragePluginRegistry;
 
+import java.util.Collections;
+import java.util.List;
+
 @JsonTypeName("jdbc-idvp-sub-scan")
 public class JdbcSubScan extends AbstractSubScan {
 
-    private final String sql;
+    private final List<String> queries;
+    private final List<List<JdbcParameter>> parameters;
+    private final List<JdbcColumn> columns;
     private final JdbcStoragePlugin plugin;
 
     @JsonCreator
     public JdbcSubScan(
+            @JsonProperty("queries") List<String> queries,
             @JsonProperty("sql") String sql,
+            @JsonProperty("parameters") List<List<JdbcParameter>> parameters,
+            @JsonProperty("columns") List<JdbcColumn> columns,
             @JsonProperty("config") StoragePluginConfig config,
             @JacksonInject StoragePluginRegistry plugins) throws ExecutionSetupException {
         super("");
-        this.sql = sql;
+        // Планы, сериализованные до появления нескольких запросов, содержат один запрос в свойстве sql
+        this.queries = queries == null && sql != null ? Collections.singletonList(sql) : queries;
+        this.parameters = parameters;
+        this.columns = columns;
         this.plugin = (JdbcStoragePlugin) plugins.getPlugin(config);
     }
 
-    JdbcSubScan(String sql, JdbcStoragePlugin plugin) {
+    JdbcSubScan(List<String> queries, List<List<JdbcParameter>> parameters, List<JdbcColumn> columns,
+                JdbcStoragePlugin plugin) {
         super("");
-        this.sql = sql;
+        this.queries = queries;
+        this.parameters = parameters;
+        this.columns = columns;
         this.plugin = plugin;
     }
 
@@ -51,9 +65,36 @@ public class JdbcSubScan extends AbstractSubScan {
         return CoreOperatorType.JDBC_SCAN.getNumber();
     }
 
+    /**
+     * Queries read by this fragment one after another. There is more than one query only for split scans.
+     */
+    @JsonProperty
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Values of the dynamic parameters of each query.
+     */
+    @JsonProperty
+    public List<List<JdbcParameter>> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Parameters of the query with the given index.
+     */
+    @JsonIgnore
+    List<JdbcParameter> getParameters(int queryIndex) {
+        return parameters == null ? Collections.emptyList() : parameters.get(queryIndex);
+    }
+
+    /**
+     * Names and width hints of the query columns as planned, null if unknown.
+     */
     @JsonProperty
-    public String getSql() {
-        return sql;
+    public List<JdbcColumn> getColumns() {
+        return columns;
     }
 
     @JsonProperty
@@ -17,20 +17,64 @@
  */
 package org.apache.drill.exec.store.idvp.jdbc;
 
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.JdbcSqlDialect;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlLiteral;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.pretty.SqlPrettyWriter;
 import org.apache.drill.PlanTestBase;
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.drill.exec.ops.FragmentContext.ExecutorState;
 import org.apache.drill.exec.proto.UserBitShared;
+import org.apache.drill.exec.record.MaterializedField;
+import org.apache.drill.exec.record.RecordBatchLoader;
+import org.apache.drill.exec.rpc.user.QueryDataBatch;
+import org.apache.drill.exec.vector.NullableVarBinaryVector;
 
 import org.joda.time.DateTime;
 
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * JDBC storage plugin tests against Derby.
  */
 public class TestJdbcPluginWithDerbyIT extends PlanTestBase {
 
+  private static final String DERBY_URL = "jdbc:derby://localhost:" + System.getProperty("derby.port")
+      + "/memory:drill_derby_test;user=root;password=root";
+
   @Test
   public void testCrossSourceMultiFragmentJoin() throws Exception {
     testNoResult("USE derby");
@@ -42,13 +86,23 @@ public class TestJdbcPluginWithDerbyIT extends PlanTestBase {
 
   @Test
   public void validateResult() throws Exception {
+    validateResult("derby");
+  }
+
+  @Test
+  public void generatedRowCopier() throws Exception {
+    // every column type of the table and a row of nulls go through one generated row copier
+    validateResult("derbyidvp");
+  }
+
+  private void validateResult(String plugin) throws Exception {
 
     // Skip date, time, and timestamp types since derby mangles these due to improper timezone support.
     testBuilder()
             .sqlQuery(
                     "select PERSON_ID, FIRST_NAME, LAST_NAME, ADDRESS, CITY, STATE, ZIP, JSON, BIGINT_FIELD, SMALLINT_FIELD, " +
                             "NUMERIC_FIELD, BOOLEAN_FIELD, DOUBLE_FIELD, FLOAT_FIELD, REAL_FIELD, TIME_FIELD, TIMESTAMP_FIELD, " +
-                            "DATE_FIELD, CLOB_FIELD from derby.DRILL_DERBY_TEST.PERSON")
+                            "DATE_FIELD, CLOB_FIELD from " + plugin + ".DRILL_DERBY_TEST.PERSON")
             .ordered()
             .baselineColumns("PERSON_ID", "FIRST_NAME", "LAST_NAME", "ADDRESS", "CITY", "STATE", "ZIP", "JSON",
                     "BIGINT_FIELD", "SMALLINT_FIELD", "NUMERIC_FIELD", "BOOLEAN_FIELD", "DOUBLE_FIELD",
@@ -70,6 +124,41 @@ public class TestJdbcPluginWithDerbyIT extends PlanTestBase {
             .build().run();
   }
 
+  @Test
+  public void utf8Strings() throws Exception {
+    // the test data script is read in the platform encoding, so non-ASCII values are inserted through the driver;
+    // the last value has a surrogate pair, a 4-byte UTF-8 sequence
+    final String[] values = {"\u041f\u0440\u0438\u0432\u0435\u0442", "\u65e5\u672c\u8a9e", "caf\u00e9",
+        "smile \uD83D\uDE00"};
+    try (Connection connection = DriverManager.getConnection(DERBY_URL);
+         Statement statement = connection.createStatement()) {
+      statement.execute("create table DRILL_DERBY_TEST.STRINGS (ID INT NOT NULL PRIMARY KEY, VAL VARCHAR(50))");
+      try (PreparedStatement insert = connection.prepareStatement("insert into DRILL_DERBY_TEST.STRINGS values (?, ?)")) {
+        for (int i = 0; i < values.length; i++) {
+          insert.setInt(1, i + 1);
+          insert.setString(2, values[i]);
+          insert.executeUpdate();
+        }
+      }
+    }
+    try {
+      testBuilder()
+              .sqlQuery("select ID, VAL from derbyidvp.DRILL_DERBY_TEST.STRINGS")
+              .unOrdered()
+              .baselineColumns("ID", "VAL")
+              .baselineValues(1, values[0])
+              .baselineValues(2, values[1])
+              .baselineValues(3, values[2])
+              .baselineValues(4, values[3])
+              .go();
+    } finally {
+      try (Connection connection = DriverManager.getConnection(DERBY_URL);
+           Statement statement = connection.createStatement()) {
+        statement.execute("drop table DRILL_DERBY_TEST.STRINGS");
+      }
+    }
+  }
+
   @Test
   public void pushdownJoin() throws Exception {
     testNoResult("use derby");
@@ -135,4 +224,458 @@ public class TestJdbcPluginWithDerbyIT extends PlanTestBase {
     String query = "select * from DRILL_DERBY_TEST.PERSON where PERSON_ID = 1";
     testPlanMatchingPatterns(query, new String[]{}, new String[]{"Filter"});
   }
+
+  @Test
+  public void splitScan() throws Exception {
+    final String query = "select PERSON_ID from derbysplit.DRILL_DERBY_TEST.PERSON where PERSON_ID > 0";
+    testPlanMatchingPatterns(query, new String[]{"splits=\\[3\\]"}, new String[]{"Filter"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("PERSON_ID")
+            .baselineValues(1)
+            .baselineValues(2)
+            .baselineValues(3)
+            .baselineValues(4)
+            .baselineValues(5)
+            .go();
+  }
+
+  @Test
+  public void computedDecimal() throws Exception {
+    // Derby computes SUM of DECIMAL(10, 2) with another precision than planned, the scale must be of the result set
+    try {
+      testNoResult("SET `planner.enable_decimal_data_type` = true");
+      testBuilder()
+              .sqlQuery("select SUM(NUMERIC_FIELD) s1, SUM(NUMERIC_FIELD * 3) s2 from derbyidvp.DRILL_DERBY_TEST.PERSON")
+              .unOrdered()
+              .baselineColumns("s1", "s2")
+              .baselineValues(new BigDecimal("100.11"), new BigDecimal("300.33"))
+              .go();
+    } finally {
+      testNoResult("RESET `planner.enable_decimal_data_type`");
+    }
+  }
+
+  @Test
+  public void longDecimals() throws Exception {
+    // NUMERIC(15, 2) is read as a double: 0.29 is 28.999999999999996 hundredths, the magnitude is rounded half up
+    // and the sign applied after, so negative values round the same way
+    try {
+      testNoResult("SET `planner.enable_decimal_data_type` = true");
+      testBuilder()
+              .sqlQuery("select ID, AMOUNT from derbyidvp.DRILL_DERBY_TEST.DECIMALS")
+              .unOrdered()
+              .baselineColumns("ID", "AMOUNT")
+              .baselineValues(1, new BigDecimal("0.29"))
+              .baselineValues(2, new BigDecimal("-0.29"))
+              .baselineValues(3, new BigDecimal("1.15"))
+              .baselineValues(4, new BigDecimal("-1.15"))
+              .baselineValues(5, new BigDecimal("9999999999999.99"))
+              .baselineValues(6, new BigDecimal("-9999999999999.99"))
+              .baselineValues(7, null)
+              .go();
+    } finally {
+      testNoResult("RESET `planner.enable_decimal_data_type`");
+    }
+  }
+
+  @Test
+  public void lobsStreamed() throws Exception {
+    final String query = "select ID, CLOB_FIELD, BLOB_FIELD from %s.DRILL_DERBY_TEST.LOBS";
+    testBuilder()
+            .sqlQuery(String.format(query, "derbyidvp"))
+            .unOrdered()
+            .baselineColumns("ID", "CLOB_FIELD", "BLOB_FIELD")
+            .baselineValues(1, "abcdefghijklmnop", new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15})
+            .baselineValues(2, "abc", new byte[]{(byte) 0xff})
+            .baselineValues(3, null, null)
+            .go();
+
+    // values over maxLobSize of 8 bytes are truncated with truncateLobs, fail the query otherwise
+    testBuilder()
+            .sqlQuery(String.format(query, "derbylob"))
+            .unOrdered()
+            .baselineColumns("ID", "CLOB_FIELD", "BLOB_FIELD")
+            .baselineValues(1, "abcdefgh", new byte[]{0, 1, 2, 3, 4, 5, 6, 7})
+            .baselineValues(2, "abc", new byte[]{(byte) 0xff})
+            .baselineValues(3, null, null)
+            .go();
+    errorMsgTestHelper(String.format(query, "derbylobcap"), "is larger than 8 bytes");
+  }
+
+  @Test
+  public void narrowTypes() throws Exception {
+    final String query = "select ID, CODE, FLAG, typeof(FLAG) T from %s.DRILL_DERBY_TEST.CODES where ID = 1";
+    testBuilder()
+            .sqlQuery(String.format(query, "derbyidvp"))
+            .unOrdered()
+            .baselineColumns("ID", "CODE", "FLAG", "T")
+            .baselineValues(1, "ab   ", 7, "INT")
+            .go();
+
+    // SMALLINT keeps its vector type and CHAR padding is trimmed
+    testBuilder()
+            .sqlQuery(String.format(query, "derbynarrow"))
+            .unOrdered()
+            .baselineColumns("ID", "CODE", "FLAG", "T")
+            .baselineValues(1, "ab", (short) 7, "SMALLINT")
+            .go();
+    testBuilder()
+            .sqlQuery("select ID, CODE, FLAG from derbynarrow.DRILL_DERBY_TEST.CODES where ID = 2")
+            .unOrdered()
+            .baselineColumns("ID", "CODE", "FLAG")
+            .baselineValues(2, null, null)
+            .go();
+  }
+
+  @Test
+  public void resultSetTypeDiffersFromPlanned() throws Exception {
+    // Calcite plans COUNT as BIGINT, Derby returns INTEGER: the vector follows the result set and keeps its place
+    final String query = "select MIN(STATE) S, COUNT(*) C, MAX(PERSON_ID) M from derbyidvp.DRILL_DERBY_TEST.PERSON";
+    final List<QueryDataBatch> results = testSqlWithResults(query);
+    final RecordBatchLoader loader = new RecordBatchLoader(getAllocator());
+    try {
+      final QueryDataBatch batch = results.get(0);
+      loader.load(batch.getHeader().getDef(), batch.getData());
+      final List<String> names = new ArrayList<>();
+      for (MaterializedField field : loader.getSchema()) {
+        names.add(field.getName());
+      }
+      assertEquals(Arrays.asList("S", "C", "M"), names);
+      assertEquals(MinorType.INT, loader.getSchema().getColumn(1).getType().getMinorType());
+    } finally {
+      loader.clear();
+      for (QueryDataBatch result : results) {
+        result.release();
+      }
+    }
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("S", "C", "M")
+            .baselineValues("CA", 5, 5)
+            .go();
+  }
+
+  @Test
+  public void bindParameters() throws Exception {
+    // string literals stay in the text, numbers are passed in the order of their markers
+    final String query = "select PERSON_ID from derbybind.DRILL_DERBY_TEST.PERSON "
+        + "where PERSON_ID > 3 and ZIP < 30000 or FIRST_NAME = 'first_name_2'";
+    testPlanMatchingPatterns(query,
+        new String[]{"PERSON_ID\\W* > \\?.*ZIP\\W* < \\?", "'first_name_2'", "parameters=\\[3, 30000\\]"},
+        new String[]{"Filter"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("PERSON_ID")
+            .baselineValues(2)
+            .baselineValues(4)
+            .go();
+  }
+
+  @Test
+  public void inListAboveSubqueryThresholdPushedAsFilter() throws Exception {
+    // Drill plans IN lists above the threshold as a join with VALUES, the rule turns it back into a filter
+    final String query = "select PERSON_ID from derbyidvp.DRILL_DERBY_TEST.PERSON where PERSON_ID in (1, 3, 5)";
+    try {
+      testNoResult("SET `planner.in_subquery_threshold` = 2");
+      testPlanMatchingPatterns(query, new String[]{"sql=.*WHERE.* OR "}, new String[]{"Join", "Values", "Filter"});
+      testBuilder()
+              .sqlQuery(query)
+              .unOrdered()
+              .baselineColumns("PERSON_ID")
+              .baselineValues(1)
+              .baselineValues(3)
+              .baselineValues(5)
+              .go();
+    } finally {
+      testNoResult("RESET `planner.in_subquery_threshold`");
+    }
+  }
+
+  @Test
+  public void existsSubqueryPushedAsSemiJoin() throws Exception {
+    final String query = "select p.PERSON_ID from derbyidvp.DRILL_DERBY_TEST.PERSON p where exists "
+        + "(select 1 from derbyidvp.DRILL_DERBY_TEST.PERSON q where q.PERSON_ID = p.PERSON_ID and q.ZIP > 20000)";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*JOIN"}, new String[]{"HashJoin", "MergeJoin", "NestedLoopJoin"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("PERSON_ID")
+            .baselineValues(2)
+            .baselineValues(4)
+            .go();
+  }
+
+  @Test
+  public void notExistsSubqueryPushedAsAntiJoin() throws Exception {
+    final String query = "select p.PERSON_ID from derbyidvp.DRILL_DERBY_TEST.PERSON p where not exists "
+        + "(select 1 from derbyidvp.DRILL_DERBY_TEST.PERSON q where q.PERSON_ID = p.PERSON_ID and q.ZIP > 20000)";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*LEFT JOIN"}, new String[]{"HashJoin", "MergeJoin", "NestedLoopJoin"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("PERSON_ID")
+            .baselineValues(1)
+            .baselineValues(3)
+            .baselineValues(5)
+            .go();
+  }
+
+  @Test
+  public void joinPushedDown() throws Exception {
+    final String query = "select p.PERSON_ID, q.CITY from derbyidvp.DRILL_DERBY_TEST.PERSON p "
+        + "join derbyidvp.DRILL_DERBY_TEST.PERSON q on p.PERSON_ID = q.PERSON_ID where p.ZIP < 20000";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*JOIN"}, new String[]{"HashJoin", "MergeJoin", "NestedLoopJoin"});
+  }
+
+  @Test
+  public void selectiveStarJoinPushedDown() throws Exception {
+    // filters of the dimensions make the join smaller than the fact table
+    final String query = "select p.PERSON_ID, q.CITY, r.STATE from derbyidvp.DRILL_DERBY_TEST.PERSON p "
+        + "join derbyidvp.DRILL_DERBY_TEST.PERSON q on p.PERSON_ID = q.PERSON_ID "
+        + "join derbyidvp.DRILL_DERBY_TEST.PERSON r on p.PERSON_ID = r.PERSON_ID "
+        + "where q.ZIP = 94111 and r.STATE = 'CA'";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*JOIN.*JOIN"}, new String[]{"HashJoin", "MergeJoin", "NestedLoopJoin"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("PERSON_ID", "CITY", "STATE")
+            .baselineValues(2, "San Francisco", "CA")
+            .go();
+  }
+
+  @Test
+  public void standardAggregatesPushedDown() throws Exception {
+    final String query = "select STATE, COUNT(*) c, SUM(ZIP) s from derbyidvp.DRILL_DERBY_TEST.PERSON group by STATE";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*GROUP BY"}, new String[]{"HashAgg", "StreamAgg"});
+  }
+
+  @Test
+  public void aggregateMissingInDatabaseComputedByDrill() throws Exception {
+    // Derby has no BOOL_OR, the aggregate stays in Drill above the pushed down scan
+    final String query = "select STATE, BOOL_OR(BOOLEAN_FIELD) b from derbyidvp.DRILL_DERBY_TEST.PERSON group by STATE";
+    testPlanMatchingPatterns(query, new String[]{"HashAgg|StreamAgg", "Jdbc"}, new String[]{"sql=.*BOOL_OR"});
+  }
+
+  @Test
+  public void windowFunctionNotPushedToDerby() throws Exception {
+    // Derby is not among the databases of JdbcSqlDialect.supportsWindowFunction
+    final String query = "select PERSON_ID, ROW_NUMBER() over (order by PERSON_ID) rn from derbyidvp.DRILL_DERBY_TEST.PERSON";
+    testPlanMatchingPatterns(query, new String[]{"Window", "Jdbc"}, new String[]{"sql=.*OVER"});
+  }
+
+  @Test
+  public void offsetFetchPushedDown() throws Exception {
+    final String query = "select PERSON_ID from derbyidvp.DRILL_DERBY_TEST.PERSON order by PERSON_ID "
+        + "offset 1 rows fetch next 2 rows only";
+    testPlanMatchingPatterns(query, new String[]{"sql=.*ORDER BY.*OFFSET 1 ROWS FETCH NEXT 2 ROWS ONLY"},
+        new String[]{"Limit", "Sort"});
+    testBuilder()
+            .sqlQuery(query)
+            .ordered()
+            .baselineColumns("PERSON_ID")
+            .baselineValues(2)
+            .baselineValues(3)
+            .go();
+  }
+
+  @Test
+  public void splitScanReadsEachRowOnce() throws Exception {
+    // split column is not projected, the filter keeps rows of the first and the last split
+    final String query = "select FIRST_NAME from derbysplit.DRILL_DERBY_TEST.PERSON where PERSON_ID <> 3";
+    testPlanMatchingPatterns(query, new String[]{"splits=\\[3\\]"}, new String[]{"Filter"});
+    testBuilder()
+            .sqlQuery(query)
+            .unOrdered()
+            .baselineColumns("FIRST_NAME")
+            .baselineValues("first_name_1")
+            .baselineValues("first_name_2")
+            .baselineValues("first_name_4")
+            .baselineValues("first_name_5")
+            .go();
+  }
+
+  @Test
+  public void physicalSplitConditions() throws Exception {
+    // Derby has no row locators, the conditions of JdbcPhysicalSplitProvider are unparsed with the other dialects
+    final JdbcPhysicalSplitProvider provider =
+        new JdbcPhysicalSplitProvider(null, new RexBuilder(new JavaTypeFactoryImpl()));
+
+    final List<RexNode> blocks = provider.blockRanges(0, 300, 3, 1000).getConditions();
+    assertEquals(Arrays.asList(
+        "(ctid < '(100,0)'::tid)",
+        "(ctid >= '(100,0)'::tid AND ctid < '(200,0)'::tid)",
+        "(ctid >= '(200,0)'::tid)"),
+        unparse(blocks, "org.postgresql.Driver"));
+    assertEquals(Arrays.asList(
+        "(_ROWID_ < 100)",
+        "(_ROWID_ >= 100 AND _ROWID_ < 200)",
+        "(_ROWID_ >= 200)"),
+        unparse(blocks, "org.h2.Driver"));
+
+    // each split is a single ROWID range, however many extents it has
+    final List<long[]> extents = Arrays.asList(
+        new long[]{7, 1, 8, 8}, new long[]{7, 1, 16, 4}, new long[]{7, 1, 20, 4}, new long[]{7, 2, 8, 8},
+        new long[]{9, 1, 128, 8});
+    assertEquals(Arrays.asList(
+        "(ROWID < DBMS_ROWID.ROWID_CREATE(1, 7, 1, 16, 0))",
+        "(ROWID >= DBMS_ROWID.ROWID_CREATE(1, 7, 1, 16, 0) AND ROWID < DBMS_ROWID.ROWID_CREATE(1, 7, 2, 8, 0))",
+        "(ROWID >= DBMS_ROWID.ROWID_CREATE(1, 7, 2, 8, 0) AND ROWID < DBMS_ROWID.ROWID_CREATE(1, 9, 1, 128, 0))",
+        "(ROWID >= DBMS_ROWID.ROWID_CREATE(1, 9, 1, 128, 0))"),
+        unparse(provider.oracleRanges(extents, 32, 4), "oracle.jdbc.OracleDriver"));
+  }
+
+  @Test
+  public void varBinaryOverRetainedBuffer() throws Exception {
+    // Derby VARCHAR FOR BIT DATA is limited to 32 KB, the copier reads a stubbed stream over the 1 MiB kept buffer
+    final byte[] large = new byte[(1 << 20) + 1];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) i;
+    }
+    final byte[] small = {1, 2, 3};
+    final Iterator<byte[]> values = Arrays.asList(large, small, null).iterator();
+    final ResultSet result = (ResultSet) Proxy.newProxyInstance(
+        ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+        (proxy, method, args) -> {
+          if (!method.getName().equals("getBinaryStream")) {
+            return null;
+          }
+          final byte[] value = values.next();
+          return value == null ? null : new ByteArrayInputStream(value);
+        });
+
+    try (NullableVarBinaryVector vector = new NullableVarBinaryVector(
+        MaterializedField.create("b", org.apache.drill.common.types.Types.optional(MinorType.VARBINARY)),
+        getAllocator())) {
+      vector.allocateNew();
+      final JdbcRecordReader.VarBinaryCopier copier = new JdbcRecordReader.VarBinaryCopier(1, result, vector.getMutator());
+      for (int i = 0; i < 3; i++) {
+        copier.copy(i);
+      }
+      vector.getMutator().setValueCount(3);
+      assertArrayEquals(large, vector.getAccessor().getObject(0));
+      assertArrayEquals(small, vector.getAccessor().getObject(1));
+      assertNull(vector.getAccessor().getObject(2));
+    }
+  }
+
+  @Test
+  public void statementCancelledWhenReaderClosedEarly() throws Exception {
+    // one row per batch: the reader is closed by the limit before it sees the end of the result set and cancels
+    // the statement, the connection must come back to the pool usable
+    final String query = "select PERSON_ID from derbycancel.DRILL_DERBY_TEST.PERSON order by PERSON_ID limit 2";
+    for (int i = 0; i < 3; i++) {
+      testBuilder()
+              .sqlQuery(query)
+              .ordered()
+              .baselineColumns("PERSON_ID")
+              .baselineValues(1)
+              .baselineValues(2)
+              .go();
+    }
+  }
+
+  @Test
+  public void statementCancelledByWatchdog() throws Exception {
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicInteger cancels = new AtomicInteger();
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    final Statement statement = (Statement) Proxy.newProxyInstance(
+        Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("cancel")) {
+            cancels.incrementAndGet();
+            cancelled.countDown();
+          }
+          return null;
+        });
+    final ExecutorState state = (ExecutorState) Proxy.newProxyInstance(
+        ExecutorState.class.getClassLoader(), new Class<?>[]{ExecutorState.class},
+        (proxy, method, args) -> method.getName().equals("shouldContinue") ? running.get() : null);
+
+    // the fragment is cancelled while the statement runs
+    try (JdbcStatementWatchdog watchdog = JdbcStatementWatchdog.watch(state, statement, "derby")) {
+      running.set(false);
+      assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+      watchdog.cancel();
+      assertEquals(1, cancels.get());
+      assertTrue(watchdog.getCancelNanos() != 0);
+    }
+
+    // a closed watchdog doesn't cancel the statement
+    final JdbcStatementWatchdog watchdog = JdbcStatementWatchdog.watch(state, statement, "derby");
+    watchdog.close();
+    watchdog.cancel();
+    assertEquals(1, cancels.get());
+    assertEquals(0, watchdog.getCancelNanos());
+  }
+
+  @Test
+  public void complexDecimalScales() throws Exception {
+    final List<BigDecimal> mixed = Arrays.asList(new BigDecimal("1.5"), new BigDecimal("2.255"), new BigDecimal("3"),
+        new BigDecimal("1E+2"));
+
+    // elements described by the driver are written with the declared scale
+    final int declared = JdbcComplexCopier.elementScale(decimalArray(2));
+    assertEquals(2, declared);
+    assertEquals(Arrays.asList("1.50", "2.26", "3.00", "100.00"), withScale(mixed, declared));
+
+    // otherwise each element keeps its own scale
+    final int unknown = JdbcComplexCopier.elementScale(decimalArray(-1));
+    assertEquals(-1, unknown);
+    assertEquals(Arrays.asList("1.5", "2.255", "3", "100"), withScale(mixed, unknown));
+  }
+
+  private static List<String> withScale(List<BigDecimal> values, int scale) {
+    final List<String> result = new ArrayList<>();
+    for (BigDecimal value : values) {
+      result.add(JdbcComplexCopier.withScale(value, scale).toPlainString());
+    }
+    return result;
+  }
+
+  /**
+   * @param scale scale of elements in the array result set metadata, -1 if the driver can't describe elements
+   */
+  private static Array decimalArray(final int scale) {
+    final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+        ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+        (proxy, method, args) -> method.getName().equals("getPrecision") ? 10 : scale);
+    final ResultSet elements = (ResultSet) Proxy.newProxyInstance(
+        ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+        (proxy, method, args) -> method.getName().equals("getMetaData") ? metaData : null);
+    return (Array) Proxy.newProxyInstance(Array.class.getClassLoader(), new Class<?>[]{Array.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getBaseType":
+              return Types.DECIMAL;
+            case "getResultSet":
+              if (scale < 0) {
+                throw new SQLFeatureNotSupportedException();
+              }
+              return elements;
+            default:
+              return null;
+          }
+        });
+  }
+
+  private static List<String> unparse(List<RexNode> conditions, String driver) {
+    final SqlDialect dialect = JdbcSqlDialect.createByDriverName(driver, null);
+    final List<String> sql = new ArrayList<>();
+    for (RexNode condition : conditions) {
+      final List<SqlNode> operands = new ArrayList<>();
+      for (RexNode operand : ((RexCall) condition).getOperands()) {
+        operands.add(SqlLiteral.createExactNumeric(((RexLiteral) operand).getValue2().toString(), SqlParserPos.ZERO));
+      }
+      final SqlPrettyWriter writer = new SqlPrettyWriter(dialect);
+      JdbcSqlDialect.ROW_LOCATOR_RANGE.createCall(SqlParserPos.ZERO, operands).unparse(writer, 0, 0);
+      // writer puts spaces around parentheses on its own
+      sql.add(writer.toString().replaceAll("\\(\\s+", "(").replaceAll("\\s+\\)", ")"));
+    }
+    return sql;
+  }
 }
@@ -54,4 +54,30 @@ insert into person (person_id, first_name, last_name, address, city, state, zip,
           '{ z : { a : 1, b : 2, c : 3 } }', -67, 4, 40.04, false, 4.0, 4.1, 444.00, '16:00:01',
           '2015-06-01 16:00:01', '2015-06-01', 'xxx');
 
-insert into person (person_id) values (5);
\ No newline at end of file
+insert into person (person_id) values (5);
+create table decimals (
+  id      INT NOT NULL PRIMARY KEY,
+  amount  NUMERIC(15, 2)
+);
+
+insert into decimals (id, amount) values (1, 0.29), (2, -0.29), (3, 1.15), (4, -1.15), (5, 9999999999999.99),
+                                         (6, -9999999999999.99), (7, NULL);
+
+create table lobs (
+  id          INT NOT NULL PRIMARY KEY,
+  clob_field  CLOB,
+  blob_field  BLOB
+);
+
+insert into lobs (id, clob_field, blob_field) values
+  (1, 'abcdefghijklmnop', CAST(X'000102030405060708090a0b0c0d0e0f' AS BLOB)),
+  (2, 'abc', CAST(X'ff' AS BLOB)),
+  (3, NULL, NULL);
+
+create table codes (
+  id    INT NOT NULL PRIMARY KEY,
+  code  CHAR(5),
+  flag  SMALLINT
+);
+
+insert into codes (id, code, flag) values (1, 'ab', 7), (2, NULL, NULL);